@@ -0,0 +1,90 @@
+package Gossip;
+
+import java.awt.Graphics;
+import java.awt.Toolkit;
+import java.awt.image.BufferStrategy;
+import javax.swing.JFrame;
+
+/*
+ * Draws the game on its own thread instead of waiting for Swing to call paint().
+ *
+ * Normally every repaint() asks Swing to paint the frame, Swing paints it on the
+ * event dispatch thread whenever it gets round to it, and two repaints close together
+ * can paint twice or show a half-drawn frame. With active rendering the frame ignores
+ * Swing's repaints, and this thread draws into the back buffer of a BufferStrategy
+ * (which Java2D keeps in a VolatileImage in video memory where it can) and then shows
+ * the whole thing at once. It does this at most framesPerSecond times a second, and
+ * only when something has asked for a repaint since the last frame, so any number of
+ * repaints in between cost one frame and an idle game costs nothing.
+ *
+ * The back buffer can be lost at any time (when the screen mode changes, say); the
+ * loop in drawFrame() is the standard way of noticing that and drawing again.
+ *
+ * paint() now runs on this thread while the timers and the mouse change the game on
+ * the event dispatch thread. It draws only the GameView the latest repaint() published,
+ * so a frame never shows a mixture of before and after a change.
+ *
+ * Turned on with "java Gossip.Gossip active".
+ */
+class ActiveRenderer implements Runnable {
+	static final int framesPerSecond=60;
+
+	private final Gossip game;
+	private final JFrame frame;
+	private volatile boolean fFrameWanted=true;
+// ************************************************************
+	ActiveRenderer(Gossip tGame, JFrame tFrame) {
+		game=tGame;
+		frame=tFrame;
+	}
+// ************************************************************
+	// The frame must be showing before this is called, or it cannot have a BufferStrategy.
+	void start() {
+		frame.setIgnoreRepaint(true);
+		frame.createBufferStrategy(2);
+		Thread renderer=new Thread(this, "Gossip renderer");
+		renderer.setDaemon(true);
+		renderer.start();
+	}
+// ************************************************************
+	// asks for the frame to be drawn again, the next time round
+	void requestFrame() {
+		fFrameWanted=true;
+	}
+// ************************************************************
+	public void run() {
+		long period=1000000000L/framesPerSecond;
+		long nextFrame=System.nanoTime();
+		while (true) {
+			if (fFrameWanted) {
+				fFrameWanted=false;
+				drawFrame();
+			}
+			nextFrame+=period;
+			long wait=nextFrame-System.nanoTime();
+			if (wait>0) {
+				try { Thread.sleep(wait/1000000, (int)(wait%1000000)); } catch (InterruptedException e) { }
+			}
+			else
+				nextFrame=System.nanoTime(); // we fell behind; don't try to catch up
+		}
+	}
+// ************************************************************
+	private void drawFrame() {
+		BufferStrategy strategy=frame.getBufferStrategy();
+		do {
+			do {
+				Graphics g=strategy.getDrawGraphics();
+				try {
+					game.paint(g);
+				}
+				finally {
+					g.dispose();
+				}
+			} while (strategy.contentsRestored());
+			strategy.show();
+		} while (strategy.contentsLost());
+		Toolkit.getDefaultToolkit().sync();	// some window systems queue up drawing; make it show now
+	}
+// ************************************************************
+}
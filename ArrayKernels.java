@@ -0,0 +1,75 @@
+package Gossip;
+
+/*
+ * The loops the engine runs over whole rows of its matrices: the column sums of
+ * affinity behind popularity, which are added up from scratch at the start of a game
+ * and kept up to date after that, and the sums behind printTurnStats. Since affinity and
+ * HeapPerceptions are flat, row-major arrays, a row is a run of consecutive doubles,
+ * and these loops just stream through memory.
+ *
+ * This class does them one double at a time. If the JVM was started with
+ *
+ *     --add-modules jdk.incubator.vector
+ *
+ * kernels is a VectorKernels instead, which does the same with the Vector API, as many
+ * doubles at a time as the processor's widest vectors hold. VectorKernels is in
+ * vector/, because it cannot be compiled without that module either; gossip.sh builds
+ * it. Without the module, or without the class, or with -Dgossip.vector=false, the
+ * engine uses this class and loses nothing but speed on big casts.
+ *
+ * addQuotients gives exactly the same results either way, because each element of
+ * to is still summed in the same order; so the column sums do not depend on which is
+ * in use. The sums may differ in the last bits, because vectors add in a different order.
+ */
+class ArrayKernels {
+	static final ArrayKernels kernels=load();
+// ************************************************************
+	private static ArrayKernels load() {
+		if (Boolean.parseBoolean(System.getProperty("gossip.vector","true"))
+				&&ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+			try {
+				return (ArrayKernels)Class.forName("Gossip.VectorKernels").getDeclaredConstructor().newInstance();
+			}
+			catch (ReflectiveOperationException|LinkageError e) { // not built; do without
+			}
+		}
+		return new ArrayKernels();
+	}
+// ************************************************************
+	// what the engine is using, for benchmarks to report
+	String describe() {
+		return "scalar";
+	}
+// ************************************************************
+	// to[k]+=from[iFrom+k]/divisor for every k<n except iSkip
+	void addQuotients(double[] to, double[] from, int iFrom, int n, double divisor, int iSkip) {
+		for (int k=0; (k<n); ++k) {
+			if (k!=iSkip)
+				to[k]+=from[iFrom+k]/divisor;
+		}
+	}
+// ************************************************************
+	double sum(double[] a, int iA, int n) {
+		double sum=0;
+		for (int k=0; (k<n); ++k)
+			sum+=a[iA+k];
+		return sum;
+	}
+// ************************************************************
+	double sumOfSquares(double[] a, int iA, int n) {
+		double sum=0;
+		for (int k=0; (k<n); ++k)
+			sum+=a[iA+k]*a[iA+k];
+		return sum;
+	}
+// ************************************************************
+	double sumOfSquaredDifferences(double[] a, int iA, double[] b, int iB, int n) {
+		double sum=0;
+		for (int k=0; (k<n); ++k) {
+			double difference=a[iA+k]-b[iB+k];
+			sum+=difference*difference;
+		}
+		return sum;
+	}
+// ************************************************************
+}
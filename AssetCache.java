@@ -0,0 +1,159 @@
+package Gossip;
+
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.GraphicsEnvironment;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.imageio.ImageIO;
+
+/*
+ * Every image the game draws, decoded from its PNG once and kept. paint() used to
+ * read the splash screen, the rules, the tips and the character backgrounds from
+ * disk every time it drew them; now it asks here and gets the decoded image back.
+ *
+ * Images are copied into an image compatible with the screen, which Java2D can keep
+ * in video memory and draw without converting pixels. There is no screen when
+ * running headless, so there they are copied into the integer pixel format that a
+ * screen would most likely have given.
+ *
+ * Faces, buttons and other small images are kept for good. Full-screen images
+ * (anything at least half the size of the window) are big, about 2.4 MB apiece,
+ * so they are kept in least-recently-used order and the oldest are dropped once
+ * they add up to more than maxScreenBytes. The default holds every full-screen
+ * image of the standard cast, so once preload() has run a game does no I/O at all;
+ * a smaller limit trades that for memory, and a dropped image is simply read again
+ * the next time it is wanted.
+ *
+ * If an image cannot be read, that is reported once on System.err and get() returns
+ * null from then on without trying again; Graphics.drawImage draws nothing for null,
+ * so the game carries on without that picture.
+ */
+class AssetCache {
+	static final long defaultMaxScreenBytes=32L<<20;
+
+	private final File directory;
+	private final long maxScreenBytes;
+	private final GraphicsConfiguration screen;	// null when headless
+
+	private final HashMap<String,BufferedImage> small=new HashMap<String,BufferedImage>();
+	private final LinkedHashMap<String,BufferedImage> screens=new LinkedHashMap<String,BufferedImage>(16,0.75f,true);
+	private final HashMap<String,String> failures=new HashMap<String,String>();
+	private long cScreenBytes;
+
+	int cReads;		// how many images have been read from disk, for the benchmarks (under the lock)
+// ************************************************************
+	AssetCache(File tDirectory) {
+		this(tDirectory, defaultMaxScreenBytes);
+	}
+// ************************************************************
+	AssetCache(File tDirectory, long tMaxScreenBytes) {
+		directory=tDirectory;
+		maxScreenBytes=tMaxScreenBytes;
+		if (GraphicsEnvironment.isHeadless())
+			screen=null;
+		else
+			screen=GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDefaultConfiguration();
+	}
+// ************************************************************
+	// Returns the image res/<name>.png, or null if it could not be read.
+	// The loader threads call this all at once, so the reading is done outside the
+	// lock; if two threads want the same image at once, both read it and one copy wins.
+	BufferedImage get(String name) {
+		synchronized (this) {
+			BufferedImage image=small.get(name);
+			if (image!=null)
+				return image;
+			image=screens.get(name);
+			if ((image!=null)||failures.containsKey(name))
+				return image;
+		}
+
+		BufferedImage image=read(name);
+		if (image==null)
+			return null;
+		synchronized (this) {
+			if (isScreenSized(image)) {
+				if (screens.put(name,image)==null)
+					cScreenBytes+=bytes(image);
+				evict(name);
+			}
+			else
+				small.put(name,image);
+		}
+		return image;
+	}
+// ************************************************************
+	// Reads the given images now, so that nothing is read while the game is drawing.
+	void preload(String... names) {
+		for (int i=0; (i<names.length); ++i)
+			get(names[i]);
+	}
+// ************************************************************
+	// Reads res/<name>.png into a compatible image without keeping it here, for
+	// images that are only wanted as the makings of something else (see FaceAtlas).
+	// Returns null, having reported why, if it cannot be read.
+	BufferedImage read(String name) {
+		File file=new File(directory,name+".png");
+		synchronized (this) {
+			++cReads;
+		}
+		BufferedImage decoded=null;
+		String problem=null;
+		try {
+			decoded=ImageIO.read(file);
+			if (decoded==null)
+				problem="not an image that can be read";
+		}
+		catch (Exception e) {
+			problem=e.toString();
+		}
+		if (decoded==null) {
+			synchronized (this) {
+				failures.put(name,problem);
+			}
+			System.err.println("Gossip: cannot read image "+file+": "+problem);
+			return null;
+		}
+		BufferedImage compatible=createImage(decoded.getWidth(),decoded.getHeight(),decoded.getTransparency());
+		Graphics2D g=compatible.createGraphics();
+		g.drawImage(decoded,0,0,null);
+		g.dispose();
+		return compatible;
+	}
+// ************************************************************
+	// an empty image that is compatible with the screen, or as near as we can get headless
+	BufferedImage createImage(int width, int height, int transparency) {
+		if (screen==null) // what a screen would most likely have given us
+			return new BufferedImage(width,height,
+					(transparency==Transparency.OPAQUE) ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB_PRE);
+		return screen.createCompatibleImage(width,height,transparency);
+	}
+// ************************************************************
+	private static boolean isScreenSized(BufferedImage image) {
+		return 2L*image.getWidth()*image.getHeight()>=(long)Gossip.frameWidth*Gossip.frameHeight;
+	}
+// ************************************************************
+	private static long bytes(BufferedImage image) {
+		return 4L*image.getWidth()*image.getHeight();
+	}
+// ************************************************************
+	// drops the least recently used full-screen images, but never the one just asked for
+	private void evict(String keep) {
+		Iterator<Map.Entry<String,BufferedImage>> i=screens.entrySet().iterator();
+		while ((cScreenBytes>maxScreenBytes)&&i.hasNext()) {
+			Map.Entry<String,BufferedImage> entry=i.next();
+			if (entry.getKey().equals(keep))
+				continue;
+			cScreenBytes-=bytes(entry.getValue());
+			i.remove();
+		}
+	}
+// ************************************************************
+}
@@ -0,0 +1,57 @@
+package Gossip;
+
+import java.util.Random;
+
+/*
+ * Everything the engine needs to know about one character: a name, whether
+ * he or she is a guy or a gal, and the three personality traits.
+ * The traits are NOT BNumbers, they are UNumbers.
+ *
+ * The game on the screen always uses the standard cast of six. Simulations can
+ * ask for a bigger cast; the extras get made-up names and random traits drawn
+ * from the same ranges as the standard six.
+ */
+class CastMember {
+	final String name;
+	final boolean fMale;
+	final double dishonest;
+	final double gullible;
+	final double vain;
+// ************************************************************
+	CastMember(String tName, boolean tfMale, double tDishonest, double tGullible, double tVain) {
+		name=tName;
+		fMale=tfMale;
+		dishonest=tDishonest;
+		gullible=tGullible;
+		vain=tVain;
+	}
+// ************************************************************
+	static CastMember[] standardCast() {
+		CastMember[] cast=new CastMember[GossipEngine.maxCharacters];
+		cast[0]=new CastMember("Bara", false,  0.0,  0.5,  0.0);
+		cast[1]=new CastMember("Owen", true,   0.8,  0.2,  0.4);
+		cast[2]=new CastMember("Max",  true,   0.0,  0.8,  0.7);
+		cast[3]=new CastMember("Ella", false, -0.7,  0.5,  0.3);
+		cast[4]=new CastMember("Mort", true,  -0.8, -0.25, 0.5);
+		cast[5]=new CastMember("Zoe",  false,  0.0,  0.7,  0.8);
+		return cast;
+	}
+// ************************************************************
+	// The standard six followed by as many extras as it takes to reach cMembers.
+	static CastMember[] extendedCast(int cMembers, long seed) {
+		CastMember[] standard=standardCast();
+		CastMember[] cast=new CastMember[cMembers];
+		Random rand=new Random(seed);
+		for (int i=0; (i<cMembers); ++i) {
+			if (i<standard.length)
+				cast[i]=standard[i];
+			else
+				cast[i]=new CastMember("Extra"+i, rand.nextBoolean(),
+						-0.8+1.6*rand.nextDouble(),
+						-0.25+1.05*rand.nextDouble(),
+						0.8*rand.nextDouble());
+		}
+		return cast;
+	}
+// ************************************************************
+}
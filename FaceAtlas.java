@@ -0,0 +1,55 @@
+package Gossip;
+
+import java.awt.Graphics2D;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.awt.image.ImageObserver;
+
+/*
+ * All ten faces of one character (one for each affinity level, plus the "hello" face)
+ * packed side by side into a single image, so that the character costs one image
+ * instead of ten and a face is drawn by copying its cell out of the strip.
+ *
+ * The faces still come from the separate PNGs in res/Faces/<level>/<name>.png; they
+ * are read without being kept in the AssetCache, copied into the strip and dropped.
+ * Gossip only builds the atlases of the characters who are in the current game.
+ *
+ * A face that cannot be read leaves its cell empty, so it draws as nothing at all,
+ * just as a missing image always has.
+ */
+class FaceAtlas {
+	final int cellWidth, cellHeight;
+	private final BufferedImage strip;
+// ************************************************************
+	// levelNames are the directories under Faces/, in cell order
+	FaceAtlas(AssetCache assets, String name, String[] levelNames) {
+		BufferedImage[] cells=new BufferedImage[levelNames.length];
+		int width=0, height=0;
+		for (int i=0; (i<levelNames.length); ++i) {
+			cells[i]=assets.read("Faces/"+levelNames[i]+"/"+name);
+			if (cells[i]!=null) {
+				width=Math.max(width,cells[i].getWidth());
+				height=Math.max(height,cells[i].getHeight());
+			}
+		}
+		cellWidth=width;
+		cellHeight=height;
+		if (width==0) {
+			strip=null;
+			return;
+		}
+		strip=assets.createImage(width*levelNames.length, height, Transparency.TRANSLUCENT);
+		Graphics2D g=strip.createGraphics();
+		for (int i=0; (i<levelNames.length); ++i)
+			g.drawImage(cells[i], i*width, 0, null);
+		g.dispose();
+	}
+// ************************************************************
+	void draw(Graphics2D g, int iLevel, int x, int y, ImageObserver observer) {
+		if (strip==null)
+			return;
+		int sx=iLevel*cellWidth;
+		g.drawImage(strip, x, y, x+cellWidth, y+cellHeight, sx, 0, sx+cellWidth, cellHeight, observer);
+	}
+// ************************************************************
+}
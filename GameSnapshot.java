@@ -0,0 +1,252 @@
+package Gossip;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/*
+ * The whole state of a GossipEngine, saved to a file and loaded back, so that a game
+ * can be carried on later and a long simulation can checkpoint itself and resume.
+ *
+ * The file is a short header followed by the engine's arrays, exactly as they are in
+ * memory, so both saving and loading memory-map the file and copy whole rows of
+ * doubles and longs at a time. Loading takes time in proportion to the size of the
+ * file and allocates nothing per value. The indexes over the history book
+ * (TestimonyIndex and RecencyTable) are not saved; they are rebuilt from the
+ * history book as it is loaded, which is also in proportion to its size.
+ *
+ * Everything is little-endian. The format, version 2:
+ *
+ *   int magic "GSSN", int version
+ *   int cCast, cCharacters, player, maxTurns, iTurn, difficultyLevel,
+ *       caller, callee, predicate, iSuspect, iLikeWhatIHear, iPhase
+ *   long random state (see GossipRandom)
+ *   int turns of popularity, int statements in the history book
+ *   int bytes of names, int 0
+ *   for each member of the cast: short name length, name (UTF-8), byte male;
+ *       then zeros up to a multiple of 8 bytes
+ *   double dishonest[cCast], gullible[cCast], vain[cCast]
+ *   double affinity[cCast][cCast]
+ *   double the column sums of affinity, [cCast]
+ *   double perceivedAffinity[cCast][cCast][cCast]
+ *   double popularity[turns of popularity][cCast]
+ *   long historyBook[statements]
+ *
+ * Version 1 had no column sums, which are then added up again, and kept popularity
+ * [cCast][turns], with room for more turns than had been played. It can still be
+ * loaded. The column sums are saved, rather than added up again, because they are
+ * kept up to date a statement at a time, and added up again they can come out
+ * different in the last bit, and a game carried on from them would then not be
+ * exactly the game that was saved.
+ *
+ * iPhase belongs to the frame, not the engine. It is kept here so that the frame can
+ * say where it was; a simulation can save anything.
+ *
+ * A snapshot is written to a temporary file that then replaces the old one, so a
+ * checkpoint interrupted part way leaves the previous checkpoint as it was.
+ * Each mapped section can be at most 2 GB; for perceptions that is one perceiver at a
+ * time, so that only limits the history book, to 268 million statements.
+ *
+ * A replay log (see ReplayLog) knows nothing of snapshots: a game that is loaded and
+ * carried on does not log what was loaded.
+ */
+class GameSnapshot {
+	static final int magic=0x4753534E;	// "GSSN"
+	static final int version=2;
+	static final int cHeaderBytes=80;
+// ************************************************************
+	static void save(GossipEngine engine, int iPhase, File file) throws IOException {
+		int cCast=engine.cCast;
+		int cTurns=engine.popularity.turns();
+		int cHistory=engine.historyBook.size();
+		byte[][] names=new byte[cCast][];
+		int cNameBytes=0;
+		for (int i=0; (i<cCast); ++i) {
+			names[i]=engine.cast[i].name.getBytes(StandardCharsets.UTF_8);
+			cNameBytes+=2+names[i].length+1;
+		}
+		cNameBytes=(cNameBytes+7)&~7;
+
+		ByteBuffer header=ByteBuffer.allocate(cHeaderBytes+cNameBytes).order(ByteOrder.LITTLE_ENDIAN);
+		header.putInt(magic).putInt(version);
+		header.putInt(cCast).putInt(engine.cCharacters).putInt(engine.player).putInt(engine.maxTurns)
+				.putInt(engine.iTurn).putInt(engine.difficultyLevel).putInt(engine.caller).putInt(engine.callee)
+				.putInt(engine.predicate).putInt(engine.iSuspect).putInt(engine.iLikeWhatIHear).putInt(iPhase);
+		header.putLong(engine.rand.state());
+		header.putInt(cTurns).putInt(cHistory).putInt(cNameBytes).putInt(0);
+		for (int i=0; (i<cCast); ++i)
+			header.putShort((short)names[i].length).put(names[i]).put((byte)(engine.cast[i].fMale ? 1 : 0));
+		header.position(header.capacity());
+		header.flip();
+
+		File temporary=new File(file.getPath()+".tmp");
+		FileChannel channel=FileChannel.open(temporary.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		try {
+			while (header.hasRemaining())
+				channel.write(header);
+			long position=cHeaderBytes+cNameBytes;
+
+			MappedByteBuffer section=map(channel, FileChannel.MapMode.READ_WRITE, position, 3L*cCast*8);
+			section.asDoubleBuffer().put(engine.dishonest).put(engine.gullible).put(engine.vain);
+			section.force();
+			position+=3L*cCast*8;
+
+			section=map(channel, FileChannel.MapMode.READ_WRITE, position, (long)cCast*cCast*8);
+			section.asDoubleBuffer().put(engine.affinity);
+			section.force();
+			position+=(long)cCast*cCast*8;
+
+			section=map(channel, FileChannel.MapMode.READ_WRITE, position, (long)cCast*8);
+			section.asDoubleBuffer().put(engine.columnSums);
+			section.force();
+			position+=(long)cCast*8;
+
+			for (int i=0; (i<cCast); ++i) {
+				section=map(channel, FileChannel.MapMode.READ_WRITE, position, (long)cCast*cCast*8);
+				engine.perceivedAffinity.save(i, section.asDoubleBuffer());
+				section.force();
+				position+=(long)cCast*cCast*8;
+			}
+
+			section=map(channel, FileChannel.MapMode.READ_WRITE, position, (long)cCast*cTurns*8);
+			engine.popularity.save(section.asDoubleBuffer());
+			section.force();
+			position+=(long)cCast*cTurns*8;
+
+			section=map(channel, FileChannel.MapMode.READ_WRITE, position, (long)cHistory*8);
+			engine.historyBook.save(section.asLongBuffer());
+			section.force();
+		}
+		finally {
+			channel.close();	// the mappings stay valid until they are collected
+		}
+		Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+// ************************************************************
+	// Makes a new engine, with exact HeapPerceptions, from the snapshot.
+	static GossipEngine load(File file) throws IOException {
+		FileChannel channel=FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try {
+			ByteBuffer header=readHeader(file, channel);
+			int cCast=header.getInt(8);
+			CastMember[] cast=new CastMember[cCast];
+			ByteBuffer names=header.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+			names.position(cHeaderBytes);
+			DoubleBuffer traits=map(channel, FileChannel.MapMode.READ_ONLY, header.capacity(), 3L*cCast*8).asDoubleBuffer();
+			for (int i=0; (i<cCast); ++i) {
+				byte[] name=new byte[names.getShort()];
+				names.get(name);
+				cast[i]=new CastMember(new String(name, StandardCharsets.UTF_8), names.get()!=0,
+						traits.get(i), traits.get(cCast+i), traits.get(2*cCast+i));
+			}
+			GossipEngine engine=new GossipEngine(new GossipRandom(0), header.getInt(16), cast, new HeapPerceptions(cCast));
+			load(file, channel, header, engine);
+			return engine;
+		}
+		finally {
+			channel.close();
+		}
+	}
+// ************************************************************
+	// Loads the snapshot into an engine that already exists, which must have the same
+	// cast. Returns the iPhase that was saved with it.
+	static int load(File file, GossipEngine engine) throws IOException {
+		FileChannel channel=FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try {
+			ByteBuffer header=readHeader(file, channel);
+			if (header.getInt(8)!=engine.cCast)
+				throw new IOException(file+" is a game for a cast of "+header.getInt(8)+", not "+engine.cCast);
+			return load(file, channel, header, engine);
+		}
+		finally {
+			channel.close();
+		}
+	}
+// ************************************************************
+	private static ByteBuffer readHeader(File file, FileChannel channel) throws IOException {
+		ByteBuffer header=ByteBuffer.allocate(cHeaderBytes).order(ByteOrder.LITTLE_ENDIAN);
+		channel.read(header, 0);
+		if ((header.position()<cHeaderBytes)||(header.getInt(0)!=magic))
+			throw new IOException(file+" is not a saved game");
+		if ((header.getInt(4)<1)||(header.getInt(4)>version))
+			throw new IOException(file+" is a saved game of version "+header.getInt(4)+"; this can only read up to version "+version);
+		int cNameBytes=header.getInt(72);
+		ByteBuffer whole=ByteBuffer.allocate(cHeaderBytes+cNameBytes).order(ByteOrder.LITTLE_ENDIAN);
+		channel.read(whole, 0);
+		if (whole.hasRemaining())
+			throw new IOException(file+" is cut short");
+		return whole;
+	}
+// ************************************************************
+	private static int load(File file, FileChannel channel, ByteBuffer header, GossipEngine engine) throws IOException {
+		int cCast=engine.cCast;
+		boolean fVersion1=header.getInt(4)==1;
+		int cTurns=header.getInt(64);
+		int cHistory=header.getInt(68);
+		long cBytes=header.capacity()+8L*(3L*cCast+(long)cCast*cCast+(fVersion1 ? 0 : cCast)
+				+(long)cCast*cCast*cCast+(long)cCast*cTurns+cHistory);
+		if (channel.size()<cBytes)
+			throw new IOException(file+" is cut short");
+
+		engine.cCharacters=header.getInt(12);
+		engine.player=header.getInt(16);
+		engine.maxTurns=header.getInt(20);
+		engine.iTurn=header.getInt(24);
+		engine.difficultyLevel=header.getInt(28);
+		engine.caller=header.getInt(32);
+		engine.callee=header.getInt(36);
+		engine.predicate=header.getInt(40);
+		engine.iSuspect=header.getInt(44);
+		engine.iLikeWhatIHear=header.getInt(48);
+		int iPhase=header.getInt(52);
+		engine.rand.setState(header.getLong(56));
+		long position=header.capacity();
+
+		DoubleBuffer doubles=map(channel, FileChannel.MapMode.READ_ONLY, position, 3L*cCast*8).asDoubleBuffer();
+		doubles.get(engine.dishonest).get(engine.gullible).get(engine.vain);
+		position+=3L*cCast*8;
+
+		map(channel, FileChannel.MapMode.READ_ONLY, position, (long)cCast*cCast*8).asDoubleBuffer().get(engine.affinity);
+		position+=(long)cCast*cCast*8;
+
+		if (fVersion1)
+			engine.sumColumns();
+		else {
+			map(channel, FileChannel.MapMode.READ_ONLY, position, (long)cCast*8).asDoubleBuffer().get(engine.columnSums);
+			position+=(long)cCast*8;
+		}
+
+		for (int i=0; (i<cCast); ++i) {
+			engine.perceivedAffinity.load(i, map(channel, FileChannel.MapMode.READ_ONLY, position, (long)cCast*cCast*8).asDoubleBuffer());
+			position+=(long)cCast*cCast*8;
+		}
+
+		doubles=map(channel, FileChannel.MapMode.READ_ONLY, position, (long)cCast*cTurns*8).asDoubleBuffer();
+		if (fVersion1)
+			engine.popularity.loadByCharacter(doubles, cTurns, engine.iTurn+1);
+		else
+			engine.popularity.load(doubles, cTurns);
+		position+=(long)cCast*cTurns*8;
+
+		engine.loadHistory(map(channel, FileChannel.MapMode.READ_ONLY, position, (long)cHistory*8).asLongBuffer(), cHistory);
+		return iPhase;
+	}
+// ************************************************************
+	private static MappedByteBuffer map(FileChannel channel, FileChannel.MapMode mode, long position, long cBytes) throws IOException {
+		if (cBytes>Integer.MAX_VALUE)
+			throw new IOException("a section of "+cBytes+" bytes is too big for a saved game");
+		MappedByteBuffer section=channel.map(mode, position, cBytes);
+		section.order(ByteOrder.LITTLE_ENDIAN);
+		return section;
+	}
+// ************************************************************
+}
@@ -0,0 +1,155 @@
+package Gossip;
+
+/*
+ * Everything paint() shows, copied out of the game at one moment and never changed
+ * after that.
+ *
+ * The game changes on the event dispatch thread, in the timers and the mouse listener,
+ * and paint() runs on the renderer's thread (see ActiveRenderer), so paint() used to be
+ * able to see a statement half made: the spoke of the new affinity but the old phase,
+ * say, or a caller who had already hung up. Now the game is only ever read where it is
+ * changed. Every timer and mouse handler ends with repaint(), when whatever it did is
+ * complete, and repaint() makes one of these and puts it in Gossip.view, which is
+ * volatile; paint() takes view once at the start of a frame and reads nothing else
+ * about the game. So a frame shows one moment of the game, whole, with no locks on
+ * either side, and anything else that wants to look at the game from another thread
+ * can do the same.
+ *
+ * A view is small (a few matrices of cCharacters by cCharacters), and one is made at
+ * most every time something asks for a frame.
+ */
+final class GameView {
+	// how each button is drawn
+	static final int hidden=0;
+	static final int pressed=1;	// or radioed
+	static final int enabled=2;
+	static final int disabled=3;
+
+	// the frame's part
+	final int iDisplay;
+	final int iPhase;
+	final int subPhase;
+	final int buttonValue;
+	final int iBackgroundCharacter;
+	private final int[] buttonLooks;
+	private final boolean[] fRadioed;
+	private final FaceAtlas[] faces;	// those that are in so far; see Gossip.loadFaces()
+
+	// the engine's part
+	final int cCharacters;
+	final int player;
+	final int caller;
+	final int callee;
+	final int predicate;
+	final int iTurn;
+	final int maxTurns;
+	final int difficultyLevel;
+	final int iLikeWhatIHear;
+	final int iSuspect;
+	private final boolean[] fMale;
+	private final double[] affinity;	// affinity[i*cCharacters+j]
+	// what the player, the caller and the callee perceive, one matrix after another
+	private final int[] perceivers;
+	private final double[] perceived;
+	// popularity at the start of the game and now; only the end of the game shows them
+	private final double[] startPopularity;
+	private final double[] popularity;
+// ************************************************************
+	GameView(Gossip game) {
+		GossipEngine engine=game.engine;
+		iDisplay=game.iDisplay;
+		iPhase=game.iPhase;
+		subPhase=game.subPhase;
+		buttonValue=game.buttonValue;
+		iBackgroundCharacter=game.iBackgroundCharacter;
+		buttonLooks=new int[Gossip.cButtons];
+		fRadioed=new boolean[Gossip.cButtons];
+		for (int i=0; (i<Gossip.cButtons); ++i) {
+			buttonLooks[i]=game.buttonLook(i);
+			fRadioed[i]=game.isButtonRadioed(i);
+		}
+		faces=game.faces.clone();
+
+		cCharacters=engine.cCharacters;
+		player=engine.player;
+		caller=engine.caller;
+		callee=engine.callee;
+		predicate=engine.predicate;
+		iTurn=engine.iTurn;
+		maxTurns=engine.maxTurns;
+		difficultyLevel=engine.difficultyLevel;
+		iLikeWhatIHear=engine.iLikeWhatIHear;
+		iSuspect=engine.iSuspect;
+		fMale=new boolean[cCharacters];
+		affinity=new double[cCharacters*cCharacters];
+		for (int i=0; (i<cCharacters); ++i) {
+			fMale[i]=engine.cast[i].fMale;
+			System.arraycopy(engine.affinity, i*engine.cCast, affinity, i*cCharacters, cCharacters);
+		}
+		perceivers=new int[] { player, caller, callee };
+		perceived=new double[perceivers.length*cCharacters*cCharacters];
+		int k=0;
+		for (int p=0; (p<perceivers.length); ++p) {
+			for (int i=0; (i<cCharacters); ++i) {
+				for (int j=0; (j<cCharacters); ++j)
+					perceived[k++]=(perceivers[p]==GossipEngine.nobody) ? 0 : engine.perceivedAffinity.get(perceivers[p], i, j);
+			}
+		}
+		startPopularity=new double[cCharacters];
+		popularity=new double[cCharacters];
+		if (engine.popularity.turns()>iTurn) {
+			for (int i=0; (i<cCharacters); ++i) {
+				startPopularity[i]=engine.popularity.get(i, 0);
+				popularity[i]=engine.popularity.get(i, iTurn);
+			}
+		}
+	}
+// ************************************************************
+	int buttonLook(int iButton) {
+		return buttonLooks[iButton];
+	}
+// ************************************************************
+	boolean isRadioed(int iButton) {
+		return fRadioed[iButton];
+	}
+// ************************************************************
+	// null until the character's atlas is built
+	FaceAtlas face(int i) {
+		return faces[i];
+	}
+// ************************************************************
+	boolean isMale(int i) {
+		return fMale[i];
+	}
+// ************************************************************
+	double affinity(int iFromCharacter, int iToCharacter) {
+		return affinity[iFromCharacter*cCharacters+iToCharacter];
+	}
+// ************************************************************
+	// Only the player, the caller and the callee are kept, which is all paint() asks about.
+	double perceivedAffinity(int iPerceiver, int iFromCharacter, int iToCharacter) {
+		for (int p=0; (p<perceivers.length); ++p) {
+			if ((perceivers[p]==iPerceiver)&&(iPerceiver!=GossipEngine.nobody))
+				return perceived[(p*cCharacters+iFromCharacter)*cCharacters+iToCharacter];
+		}
+		throw new IllegalArgumentException("the view does not keep what "+iPerceiver+" perceives");
+	}
+// ************************************************************
+	// as GossipEngine.getAffinityIndex and getPAffinityIndex
+	int getAffinityIndex(int iFromCharacter, int iToCharacter) {
+		return GossipEngine.boundedToInteger(affinity(iFromCharacter, iToCharacter));
+	}
+	// ------------------------------------------------------------
+	int getPAffinityIndex(int iPerceiver, int iFromCharacter, int iToCharacter) {
+		return GossipEngine.boundedToInteger(perceivedAffinity(iPerceiver, iFromCharacter, iToCharacter));
+	}
+// ************************************************************
+	double startPopularity(int i) {
+		return startPopularity[i];
+	}
+	// ------------------------------------------------------------
+	double popularity(int i) {
+		return popularity[i];
+	}
+// ************************************************************
+}
@@ -1,25 +1,32 @@
 package Gossip;
 
-import javax.imageio.ImageIO;
-import javax.sound.sampled.AudioInputStream;
-import javax.sound.sampled.AudioSystem;
-import javax.sound.sampled.Clip;
 import javax.swing.JFrame;
 import javax.swing.Timer;
 import javax.swing.UIManager;
+import javax.imageio.ImageIO;
 
 import java.awt.BasicStroke;
 import java.awt.Color;
 import java.awt.Font;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.Image;
 import java.awt.Rectangle;
+import java.awt.font.TextLayout;
 import java.awt.RenderingHints;
 import java.awt.image.BufferedImage;
 import java.awt.image.ImageObserver;
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.MouseEvent;
@@ -98,8 +105,7 @@ import java.awt.geom.Line2D;
  *  much brainless actors right now. I'll be adding that over the course
  *  of January. All the AI is confined to the last section of code (I think).
  */
-public class Gossip extends JFrame implements ImageObserver {
-	private static final long serialVersionUID=1L;
+public class Gossip implements ImageObserver {
 	// graphics constants specifying sizes and distances of imagery
 	static final int frameWidth=940;	// width of window
 	static final int frameHeight=640;	// height of window
@@ -115,10 +121,9 @@ public class Gossip extends JFrame implements ImageObserver {
 	static final double radius=250; // radius of the circle circumscribing the hexagon
 
 
-	static final int maxCharacters=6;	// number of characters
-	static final int cAffinityLevels=9; // number of permitted expressions
-	static final int nobody=-1;
-	static final int anybody=-1;
+	static final int maxCharacters=GossipEngine.maxCharacters;	// number of characters
+	static final int cAffinityLevels=GossipEngine.cAffinityLevels; // number of permitted expressions
+	static final int nobody=GossipEngine.nobody;
 	
 	// button identifications
 	static final int upArrow=0;
@@ -147,6 +152,8 @@ public class Gossip extends JFrame implements ImageObserver {
 	static final int backgroundDisplay=4;
 	static final int optionsDisplay=5;
 	static final int tipsDisplay=6;
+	// their names, in that order, for benchmarks and metrics
+	static final String[] displayNames={"main", "rules", "title", "endGame", "background", "options", "tips"};
 	
 	// Phase definitions
 	static final int playerSelectsCallee=0;
@@ -169,21 +176,28 @@ public class Gossip extends JFrame implements ImageObserver {
 	static final int reactionAnimation4=17;
 	static final int npcHangsUp=18;
 	
+	// The window the game is played in. It is null when the game is being drawn
+	// somewhere else, such as into an off-screen image by RenderBenchmark.
+	JFrame frame;
+	// Draws the frame on a thread of its own, when the game is run with "active";
+	// otherwise null, and Swing calls paint() as usual.
+	ActiveRenderer renderer;
+
 	boolean fQuit;		// is it time to quit the game?
-	int maxTurns;		// how long the game will be
-	int iTurn;			// how many turns have we played so far?
 	int iPhase;			// the all-important phase index
 	int iDisplay;		// specifies which display mode we'in in; see above constants
-	int player;			// a variable specifying which character is the player. For now, it's always zero, but I might want to change it in the future.
 	int buttonValue;	// the variable controlled by the upArrow and downArrow buttons.
 	int iBackgroundCharacter; // the character whose background is being displayed.
-	int cCharacters;	// the number of characters playing in this particular game
-	int difficultyLevel;	// you'll never guess what this is!
 	int subPhase;		// used for display phase npcTurn to animate faces
+	// All of the above, and the engine, as they were at the latest repaint(); paint()
+	// reads only this (as shown, for the frame it is drawing). See GameView.
+	volatile GameView view;
+	GameView shown;
 	
-	// these two values are used to communicate feedback to the player
-	int iSuspect; // how much the speaker's statement disagrees with what I've previously heard
-	int iLikeWhatIHear;	// how agreeable I find the speaker's statement
+	// The social model: affinities, perceptions, the history book and the NPC AI.
+	// It also holds the turn counter, the cast size, the difficulty level, the player
+	// (for now, always zero) and the iSuspect/iLikeWhatIHear feedback values.
+	GossipEngine engine;
 	
 	// These next three variables are of enormous importance and show up everywhere.
 	// They specify who's who in any given conversation.
@@ -200,33 +214,27 @@ public class Gossip extends JFrame implements ImageObserver {
 	// Indirect: "Speaker tells Listener that Predicate told Speaker that Listener is {adjective}"
 	// The adjectives in the above statements are statements of affinity; they are specified
 	//    with String[][] guyDescription and galDescription.
-	int caller, callee, predicate;
+	// They live in the engine: engine.caller, engine.callee and engine.predicate.
 	
-	String[] names=new String[maxCharacters]; // the names of the six characters
+	String[] names=new String[maxCharacters]; // the names of the six characters, from the engine's cast
 	
-	// These are just buffered images that have a location attached to them.
-	// They come in nine versions: one for each affinity level.
-	ImagePlusLocation[][] faces=new ImagePlusLocation[maxCharacters][cAffinityLevels+1];
+	// Each character's faces come in ten versions: one for each affinity level, plus hello.
+	// They are packed into one FaceAtlas per character, which is only built once the
+	// character is in a game (see loadFaces); until then it is null.
+	FaceAtlas[] faces=new FaceAtlas[maxCharacters];
+	Future<?>[] faceLoads=new Future<?>[maxCharacters];	// the atlases on the way
+	int[] faceX=new int[maxCharacters];	// where each character's face goes on the screen
+	int[] faceY=new int[maxCharacters];
 	RoundButton[] buttons; // the various buttons, some of which appear and disappear.
 	
 	BufferedImage quotationMarks; // the image of quotation marks used in indirect displays
+	BufferedImage board;	// the hexagon, spokes and resting faces; see drawBoard()
+	int[] boardKey=new int[0];	// what the board was last drawn from
+	int[] newBoardKey=new int[0];	// what it ought to show now; kept to save allocating it
+	AssetCache assets;	// every image, decoded once; paint() never reads the disk
 	Graphics g;  // the Java graphics environment used for the display
 	Graphics2D g2; // the second-level Java graphics environment used for the display
 	
-	// how much the first character likes the second character. Bounded Number
-	double[][] affinity=new double[maxCharacters][maxCharacters];
-	
-	// perceived affinity of second for third as perceived by first. Bounded Number
-	double[][][] perceivedAffinity=new double[maxCharacters][maxCharacters][maxCharacters];
-	
-	// average of the affinities towards the character, for each turn
-	double[][] popularity=new double[maxCharacters][10];
-
-	// personality traits
-	double[] dishonest=new double[maxCharacters];
-	double[] gullible=new double[maxCharacters];
-	double[] vain=new double[maxCharacters];
-
 	// location on the screen of the characters' faces
 	int[] hexagonX=new int[maxCharacters];
 	int[] hexagonY=new int[maxCharacters];
@@ -236,8 +244,11 @@ public class Gossip extends JFrame implements ImageObserver {
 	String[][] indirectFeedback=new String[maxCharacters][3];
 	int[][] feedbackFace=new int[3][3];
 	
-	// random number generator in Java
-	Random rand;
+	// random number generator in Java; this one is the engine's
+	GossipRandom rand;
+	// The faces that flicker while two NPCs talk are chosen with this one. If they
+	// took the engine's numbers, a game would depend on how often it was repainted.
+	Random animationRand=new Random(27);
 	
 	// color assignment for each of 9 discrete affinity levels, plus transparency
 	Color[] affinityLevelColor=new Color[cAffinityLevels+1];
@@ -247,13 +258,24 @@ public class Gossip extends JFrame implements ImageObserver {
 	String[][] guyDescription=new String[maxCharacters][cAffinityLevels+1];
 	String[][] galDescription=new String[maxCharacters][cAffinityLevels+1];
 	
-	ArrayList<History> historyBook=new ArrayList<History>();
-	
 	Color transparent;	// transparency color
+	// (Images used to be drawn with transparent as their background colour. That looks
+	// the same as no background at all, but makes Java2D copy the image every time.)
 	Font messageFont;		// font used for messages
 	Font nameFont;			// font used for names
 	Font turnFont;			// font used for turns
 	Font optionsFont;		// font used for option labels
+	MessageLayouts messages;	// every message shown so far, wrapped and ready to draw
+	String[] turnLabels=new String[16];	// the turn counter's numbers, so as not to build them every frame
+
+	// the kinds of message, for MessageLayouts.key()
+	static final int fixedMessage=0;
+	static final int callingMessage=1;
+	static final int reactionMessage=2;
+	static final int directQuote=3;
+	static final int playerDirectQuote=4;
+	static final int indirectQuote=5;
+	static final int playerIndirectQuote=6;
 	
 	// These are all Java timers; when started, they run for their specified time,
 	// then trigger an event for which code must be assigned.
@@ -265,9 +287,26 @@ public class Gossip extends JFrame implements ImageObserver {
 	Timer npcHangsUpTimer;				// time delay for any "hang up phone" sound and animation
 	Timer reactionAnimationTimer;		// time delay for the NPC reaction animation
 	Timer secretNPCHangsUpTimer;		// time delay for the short NPC talking animation
+	Timer facesTimer;					// puts the face atlases in as they are built
 	
-	// for playing sounds
-	Clip soundClip;	
+	// where the game is saved at the start of each of the player's turns, or null;
+	// see saveGame() and continueGame()
+	File saveFile;
+
+	// NPCs in hard games look ahead with this when -Dgossip.lookaheadMillis is set;
+	// made the first time it is needed and kept for every game after
+	LookaheadPlanner planner;
+
+	// for playing sounds; null when headless, and until the loaders have opened it
+	volatile SoundMixer sounds;
+
+	// Images and sounds are read on these threads, all at once, while the splash screen
+	// is up. The game leaves the splash screen when the essential ones (the buttons and
+	// the quotation marks) are in; see load() and fEssentialsLoaded().
+	ExecutorService loaders;
+	ArrayList<Future<?>> essentials=new ArrayList<Future<?>>();
+	ArrayList<Future<?>> extras=new ArrayList<Future<?>>();
+	StartupTimeline timeline=new StartupTimeline();
 	
 	// These values control Timers and are used for normal play, 
 	// and are shortened for debugging
@@ -283,33 +322,66 @@ public class Gossip extends JFrame implements ImageObserver {
 	// It speeds up actions and prints debugging values.
 	// Set it to false for real players.
 	boolean fDebug;
-	// these values are used only when debug=true;
-	double flatteryDamage=0;
-	double suspectDamage=0;;
 // ************************************************************
 	public Gossip() {
+		this(false);
+	}
+// ************************************************************
+	// A headless Gossip has no window, so it takes no mouse input and its timers
+	// never go off; it is only ever drawn by calling paint() directly.
+	Gossip(boolean fHeadless) {
 		fDebug=false;
+		timeline.event("constructing");
 
 		// Java for "draw stuff with antialiasing"
 		System.setProperty("apple.awt.antialiasing", "on");
 		System.setProperty("apple.awt.textantialiasing", "on");	
 		
-		setSize(frameWidth,frameHeight);
-		setTitle("Gossip");		
-		setBackground(Color.black);
-		setLayout(null);
-		setVisible(false);
-		g=getGraphics();
-		g2=(Graphics2D)g;
+		long start=timeline.now();
+		if (!fHeadless) {
+			frame=new JFrame() {
+				private static final long serialVersionUID=1L;
+				public void paint(Graphics g) {
+					Gossip.this.paint(g);
+				}
+			};
+			frame.setSize(frameWidth,frameHeight);
+			frame.setTitle("Gossip");		
+			frame.setBackground(Color.black);
+			frame.setLayout(null);
+			frame.setVisible(false);
+			g=frame.getGraphics();
+			g2=(Graphics2D)g;
+		}
+		timeline.span(fHeadless ? "AWT: none, headless" : "AWT: frame", start);
+		// ImageIO looks for its plugins the first time it is used, which is a
+		// noticeable part of the cold start; this makes it show up on its own line.
+		start=timeline.now();
+		ImageIO.getImageReadersByFormatName("png").hasNext();
+		timeline.span("ImageIO: plugin discovery", start);
 		
-		rand=new Random(27); // do you think that 27 is the best number to use here?
-		player=0;
-		caller=player;
-		callee=nobody;
+		// The splash screen is read first, on its own, so that it can go up at once;
+		// everything else is read behind it.
+		assets=new AssetCache(new File(System.getProperty("user.dir")+"/res"));
+		start=timeline.now();
+		assets.preload("SplashScreen");
+		timeline.span("SplashScreen", start);
+		loaders=Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+			int cThreads;
+			public synchronized Thread newThread(Runnable r) {
+				Thread loader=new Thread(r, "Gossip loader "+(++cThreads));
+				loader.setDaemon(true);
+				return loader;
+			}
+		});
+		rand=new GossipRandom(27); // do you think that 27 is the best number to use here?
+		engine=new GossipEngine(rand, 0);
+		engine.fDebug=fDebug;
 		messageFont=new Font("Arial", Font.PLAIN, 24);
 		nameFont=new Font("Arial", Font.PLAIN, 36);
 		turnFont=new Font("Arial", Font.PLAIN, 64);
 		optionsFont=new Font("Times", Font.BOLD, 64);
+		messages=new MessageLayouts(messageFont, frameWidth-messageX-10);
 		transparent=new Color(0,0,0,0);
 		if (fDebug) {
 			splashScreenTime=100;
@@ -335,36 +407,10 @@ public class Gossip extends JFrame implements ImageObserver {
 		//   initially small and steadily grew. I was a frog in warming water.
 		//   Besides, I'm a little worried about making it too easy for users
 		//   to alter.
-		names[0]="Bara";
-		names[1]="Owen";
-		names[2]="Max";
-		names[3]="Ella";
-		names[4]="Mort";
-		names[5]="Zoe";	
+		// The names and personality traits are in CastMember.standardCast().
+		for (int i=0; (i<maxCharacters); ++i)
+			names[i]=engine.cast[i].name;
 		
-		// personality traits of the characters
-		// these are NOT BNumbers, they are UNumbers
-		dishonest[0]=0.0;
-		dishonest[1]=0.8;
-		dishonest[2]=0.0;
-		dishonest[3]=-0.7;
-		dishonest[4]=-0.8;
-		dishonest[5]=0.0;
-		
-		gullible[0]=0.5;
-		gullible[1]=0.2;
-		gullible[2]=0.8;
-		gullible[3]=0.5;
-		gullible[4]=-0.25;
-		gullible[5]=0.7;
-		
-		vain[0]=0.0;
-		vain[1]=0.4;
-		vain[2]=0.7;
-		vain[3]=0.3;
-		vain[4]=0.5;
-		vain[5]=0.8;
-				
 		// Red through grey to Blue
 		affinityLevelColor[9]=transparent;
 		affinityLevelColor[8]=new Color(255,0,0); // red
@@ -614,15 +660,13 @@ public class Gossip extends JFrame implements ImageObserver {
 			hexagonX[i]=(int)(centerX+(radius-70)*Math.sin(angle));
 			hexagonY[i]=(int)(centerY+(radius-70)*Math.cos(angle));
 			double dx=centerX+radius*Math.sin(angle);
-			int x=(int)dx-faceSize/2;
+			faceX[i]=(int)dx-faceSize/2;
 			double dy=centerY+radius*Math.cos(angle);
-			int y=(int)dy-faceSize/2;
-			for (int j=0; (j<cAffinityLevels+1); ++j) {
-				faces[i][j]=new ImagePlusLocation(readImage("Faces/"+affinityLevelText[j]+"/"+names[i]));
-				faces[i][j].setLocation(x,y);
-			}
+			faceY[i]=(int)dy-faceSize/2;
 		}
-		quotationMarks=readImage("QuotationMarks");
+		essentials.add(load("QuotationMarks", new Runnable() {
+			public void run() { quotationMarks=readImage("QuotationMarks"); }
+		}));
 		buttons=new RoundButton[cButtons];
 		buttons[upArrow]=new RoundButton("upArrow",800,30);
 		buttons[downArrow]=new RoundButton("downArrow",800,170);
@@ -640,11 +684,48 @@ public class Gossip extends JFrame implements ImageObserver {
 		buttons[hardButton]=new RoundButton("hard",667,480);
 		buttons[leaveOptions]=new RoundButton("leaveOptions",800,290);
 		buttons[tips]=new RoundButton("tips",10,500);
+		for (int i=0; (i<cButtons); ++i) {
+			final RoundButton button=buttons[i];
+			essentials.add(load("Buttons/"+button.name, new Runnable() {
+				public void run() { button.load(); }
+			}));
+		}
+		// The full-screen images that paint() draws, and the sounds. These are not waited
+		// for: if one is wanted before it is in, it is simply read there and then.
+		String[] screens={ "Rules", "Tips0", "Tips1", "Tips2" };
+		for (int i=0; (i<screens.length); ++i) {
+			final String name=screens[i];
+			extras.add(load(name, new Runnable() {
+				public void run() { assets.preload(name); }
+			}));
+		}
+		for (int i=0; (i<maxCharacters); ++i) {
+			final String name="Backgrounds/"+names[i];
+			extras.add(load(name, new Runnable() {
+				public void run() { assets.preload(name); }
+			}));
+		}
+		if (!fHeadless) {
+			extras.add(load("sounds", new Runnable() {
+				public void run() {
+					SoundMixer mixer=new SoundMixer(new File(System.getProperty("user.dir")+"/res/sounds"));
+					mixer.preload("psst");
+					for (int i=0; (i<maxCharacters); ++i)
+						mixer.preload("Ringtones/"+names[i], "Hello/"+names[i], "Goodbye/"+names[i]);
+					sounds=mixer;
+				}
+			}));
+		}
+		timeline.event("loading started");
 
+		start=timeline.now();
 		// Herewith the code for the various timers that specify delays for sounds and animations.
 		// The first parameter is the time delay in milliseconds
-		splashScreenTimer=new Timer(splashScreenTime, new ActionListener() {
+		// After splashScreenTime this checks every 50 ms whether the buttons are in yet.
+		splashScreenTimer=new Timer(50, new ActionListener() {
 			public void actionPerformed(ActionEvent e) { 
+					if (!fEssentialsLoaded())
+						return;
 					splashScreenTimer.stop();
 					iDisplay=optionsDisplay;
 					buttons[_4Button].setfVisible(true);
@@ -664,13 +745,24 @@ public class Gossip extends JFrame implements ImageObserver {
 					
 					buttons[_4Button].setfRadioed(true);
 					buttons[easyButton].setfRadioed(true);
+					loadFaces(); // every game has at least these four
 					repaint();
+					timeline.interactive();
 			};			
 		});
+		splashScreenTimer.setInitialDelay(splashScreenTime);
+		// Every 50 ms while any face atlases are on the way, this puts in those that are done.
+		facesTimer=new Timer(50, new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				if (!fFacesPending())
+					facesTimer.stop();
+				repaint();
+			};
+		});
 		helloTimer=new Timer(helloTime, new ActionListener() {
 			public void actionPerformed(ActionEvent e) { 
-				playSound("Hello/"+names[callee], false);
-				iPhase=playerSelectsPredicate;
+				playSound("Hello/"+names[engine.callee], false);
+				setPhase(playerSelectsPredicate);
 				repaint();
 			};			
 		});
@@ -679,8 +771,8 @@ public class Gossip extends JFrame implements ImageObserver {
 		npcCallsPlayerTimer=new Timer(npcCallsPlayerTime, new ActionListener() {
 			public void actionPerformed(ActionEvent e) { 
 				buttons[enter].setfEnabled(true);
-				playSound("Hello/"+names[callee], false);
-				iPhase=npcDeclaresDirectAffinity;
+				playSound("Hello/"+names[engine.callee], false);
+				setPhase(npcDeclaresDirectAffinity);
 				repaint();
 			};			
 		});
@@ -689,7 +781,7 @@ public class Gossip extends JFrame implements ImageObserver {
 		/*goodbyeTimer=new Timer(goodbyeTime, new ActionListener() {
 			public void actionPerformed(ActionEvent e) { 
 				playSound("Goodbye/"+names[callee], false);
-				iPhase=playerSelectsPredicate;
+				setPhase(playerSelectsPredicate);
 				repaint();
 			};			
 		});
@@ -698,9 +790,8 @@ public class Gossip extends JFrame implements ImageObserver {
 		playerHangsUpTimer=new Timer(playerHangsUpTime, new ActionListener() {
 			public void actionPerformed(ActionEvent e) { 
 				if (iDisplay==mainDisplay) {
-					iPhase=npcTurn;
-					caller=1; // first NPC
-					callee=nobody;
+					setPhase(npcTurn);
+					engine.nextCaller(); // on to the first NPC
 					runNPCTurn();
 				}
 				repaint();
@@ -718,10 +809,10 @@ public class Gossip extends JFrame implements ImageObserver {
 
 		reactionAnimationTimer=new Timer(reactionAnimationTime, new ActionListener() {
 			public void actionPerformed(ActionEvent e) {
-				++iPhase;
+				setPhase(iPhase+1);
 				buttons[enter].setfEnabled(true);
 				if (iPhase==npcHangsUp) {
-					playSound("Goodbye/"+names[callee],false);
+					playSound("Goodbye/"+names[engine.callee],false);
 					npcHangsUpTimer.start();
 					buttons[enter].setfEnabled(false);
 				}
@@ -741,9 +832,10 @@ public class Gossip extends JFrame implements ImageObserver {
 				repaint();
 			};
 		});
+		timeline.span("Swing: timers", start);
 
 // Here we go with the Monstrous Mouse Listener!
-		addMouseListener(new MouseListener() {
+		MouseListener mouseListener=new MouseListener() {
 //		  public void mouseDragged(MouseEvent e) { }
 			//------------------------------------------------------------
 			/*
@@ -797,51 +889,51 @@ public class Gossip extends JFrame implements ImageObserver {
 								  break;
 							  }
 							  case _4Button: {
-								  cCharacters=4;
+								  engine.cCharacters=4;
+								  loadFaces();
 								  buttons[_4Button].setfRadioed(true);
 								  buttons[_5Button].setfRadioed(false);
 								  buttons[_6Button].setfRadioed(false);
 								  break;
 							  }
 							  case _5Button: {
-								  cCharacters=5;
+								  engine.cCharacters=5;
+								  loadFaces();
 								  buttons[_4Button].setfRadioed(false);
 								  buttons[_5Button].setfRadioed(true);
 								  buttons[_6Button].setfRadioed(false);
 								  break;
 							  }
 							  case _6Button: {
-								  cCharacters=6;
+								  engine.cCharacters=6;
+								  loadFaces();
 								  buttons[_4Button].setfRadioed(false);
 								  buttons[_5Button].setfRadioed(false);
 								  buttons[_6Button].setfRadioed(true);
 								  break;
 							  }
 							  case easyButton: {
-								  difficultyLevel=0;
+								  engine.difficultyLevel=0;
 								  buttons[easyButton].setfRadioed(true);
 								  buttons[mediumButton].setfRadioed(false);
 								  buttons[hardButton].setfRadioed(false);
 								  break;
 							  }
 							  case mediumButton: {
-								  difficultyLevel=1;								  
+								  engine.difficultyLevel=1;								  
 								  buttons[easyButton].setfRadioed(false);
 								  buttons[mediumButton].setfRadioed(true);
 								  buttons[hardButton].setfRadioed(false);
 								  break;
 							  }
 							  case hardButton: {
-								  difficultyLevel=2;
+								  engine.difficultyLevel=2;
 								  buttons[easyButton].setfRadioed(false);
 								  buttons[mediumButton].setfRadioed(false);
 								  buttons[hardButton].setfRadioed(true);
 								  break;
 							  }
 							  case leaveOptions: {
-								  iDisplay=mainDisplay;
-								  maxTurns=3*(cCharacters-3);
-								  iPhase=playerSelectsCallee;
 								  buttons[_4Button].setfVisible(false);
 								  buttons[_5Button].setfVisible(false);
 								  buttons[_6Button].setfVisible(false);
@@ -849,37 +941,11 @@ public class Gossip extends JFrame implements ImageObserver {
 								  buttons[mediumButton].setfVisible(false);
 								  buttons[hardButton].setfVisible(false);
 								  buttons[leaveOptions].setfVisible(false);
-									
-								  buttons[upArrow].setfVisible(true);
-								  buttons[downArrow].setfVisible(true);
-								  buttons[enter].setfVisible(true);
-								  buttons[rules].setfVisible(true);
-								  buttons[rules].setfEnabled(true);
-								  buttons[tips].setfVisible(true);
-								  buttons[tips].setfEnabled(true);
 
-								  // initialize perceptions based on difficulty level
-								  for (int i=0; (i<cCharacters); ++i) {
-									  for (int j=0; (j<cCharacters); ++j) {
-										  for (int k=0; (k<cCharacters); ++k) {
-											  if (i==j) {
-												  perceivedAffinity[i][j][k]=affinity[i][k];											  
-											  }
-											  else {
-												  double deviance=rand.nextDouble()-0.5;
-												  double wrongValue=bSum(affinity[j][k],deviance);
-												  perceivedAffinity[i][j][k]=blend(affinity[j][k],wrongValue,difficultyLevel-1);
-											  }
-										  }
-									  }
-								  }
-							  calculatePopularity();
-							  // New code for March 11th, 2013
-							  // This slows down the reaction for easier levels
-							  if (difficultyLevel==0)
-							  	  reactionAnimationTimer.setInitialDelay(4000);
-							  if (difficultyLevel==1)
-							  	  reactionAnimationTimer.setInitialDelay(3000)
+								  // set the game length and initialize perceptions based on difficulty level
+								  engine.startGame();
+								  startPlaying();
+								  saveGame();
 							  break;
 							  }
 							  case playAgain: {
@@ -906,7 +972,7 @@ public class Gossip extends JFrame implements ImageObserver {
 								  iDisplay=backgroundDisplay;
 								  buttons[leftArrow].setfEnabled(true);
 								  ++iBackgroundCharacter;
-								  if (iBackgroundCharacter==cCharacters-1)
+								  if (iBackgroundCharacter==engine.cCharacters-1)
 									  buttons[rightArrow].setfEnabled(false);
 								  break;
 							  }
@@ -944,8 +1010,8 @@ public class Gossip extends JFrame implements ImageObserver {
 							  case enter: {
 								  switch (iPhase) {
 									  case playerDeclaresDirectAffinity: {
-										  declareAffinity(buttonValue,player,callee, predicate );
-										  iPhase=reactionAnimation1;
+										  engine.declareAffinity(buttonValue,engine.player,engine.callee, engine.predicate );
+										  setPhase(reactionAnimation1);
 										  buttons[enter].setfEnabled(false);
 										  buttons[upArrow].setfEnabled(false);
 										  buttons[downArrow].setfEnabled(false);
@@ -953,18 +1019,18 @@ public class Gossip extends JFrame implements ImageObserver {
 										  break;
 									  }
 									  case npcRespondsDirectAffinity: {
-										  iPhase=playerDeclaresIndirectAffinity;
-										  int iAffinity=getAffinityIndex(callee,predicate);
-										  declareAffinity(iAffinity, callee, player, predicate);
-										  buttonValue=getPAffinityIndex(player,predicate,callee);
+										  setPhase(playerDeclaresIndirectAffinity);
+										  int iAffinity=engine.getAffinityIndex(engine.callee,engine.predicate);
+										  engine.declareAffinity(iAffinity, engine.callee, engine.player, engine.predicate);
+										  buttonValue=engine.getPAffinityIndex(engine.player,engine.predicate,engine.callee);
 										  buttons[enter].setfEnabled(true);
 										  buttons[upArrow].setfEnabled(true);
 										  buttons[downArrow].setfEnabled(true);
 										  break;
 									  }
 									  case playerDeclaresIndirectAffinity: {
-										  iPhase=reactionAnimation2;
-										  declareIndirectAffinity(buttonValue, predicate, player, callee, callee);
+										  setPhase(reactionAnimation2);
+										  engine.declareIndirectAffinity(buttonValue, engine.predicate, engine.player, engine.callee, engine.callee);
 										  buttons[enter].setfEnabled(false);
 											buttons[upArrow].setfEnabled(false);
 											buttons[downArrow].setfEnabled(false);
@@ -972,25 +1038,25 @@ public class Gossip extends JFrame implements ImageObserver {
 										  break;
 									  }
 									  case npcRespondsIndirectAffinity: {
-										  declareIndirectAffinity(getPAffinityIndex(callee,predicate,player),predicate, callee, player, player);
-										  iPhase=playerHangsUp;
+										  engine.declareIndirectAffinity(engine.getPAffinityIndex(engine.callee,engine.predicate,engine.player),engine.predicate, engine.callee, engine.player, engine.player);
+										  setPhase(playerHangsUp);
 										  buttons[enter].setfEnabled(false);
-										  playSound("Goodbye/"+names[callee],false);
+										  playSound("Goodbye/"+names[engine.callee],false);
 										  playerHangsUpTimer.start();
 										  break;
 									  }
 									  case npcDeclaresDirectAffinity: {
-										  iPhase=playerRespondsDirectAffinity;
-										  declareAffinity(getAffinityIndex(caller,predicate), caller, player, predicate);
-										  buttonValue=getPAffinityIndex(player,player,predicate);
+										  setPhase(playerRespondsDirectAffinity);
+										  engine.declareAffinity(engine.callerDirectStatement(), engine.caller, engine.player, engine.predicate);
+										  buttonValue=engine.getPAffinityIndex(engine.player,engine.player,engine.predicate);
 										  buttons[upArrow].setfEnabled(true);
 										  buttons[downArrow].setfEnabled(true);
 										  buttons[enter].setfEnabled(true);
 										  break;
 									  }
 									  case playerRespondsDirectAffinity: {
-										  declareAffinity(buttonValue, player, caller, predicate);
-										  iPhase=reactionAnimation3;
+										  engine.declareAffinity(buttonValue, engine.player, engine.caller, engine.predicate);
+										  setPhase(reactionAnimation3);
 										  buttons[enter].setfEnabled(false);
 											buttons[upArrow].setfEnabled(false);
 											buttons[downArrow].setfEnabled(false);
@@ -998,17 +1064,17 @@ public class Gossip extends JFrame implements ImageObserver {
 										  break;
 									  }
 									  case npcDeclaresIndirectAffinity: {
-										  iPhase=playerRespondsIndirectAffinity;
-										  declareIndirectAffinity(getPAffinityIndex(caller,predicate,player), predicate, caller, player, player);
-										  buttonValue=getPAffinityIndex(player,predicate,caller);
+										  setPhase(playerRespondsIndirectAffinity);
+										  engine.declareIndirectAffinity(engine.callerIndirectStatement(), engine.predicate, engine.caller, engine.player, engine.player);
+										  buttonValue=engine.getPAffinityIndex(engine.player,engine.predicate,engine.caller);
 										  buttons[upArrow].setfEnabled(true);
 										  buttons[downArrow].setfEnabled(true);
 										  buttons[enter].setfEnabled(true);
 										  break;
 									  }
 									  case playerRespondsIndirectAffinity: {
-										  declareIndirectAffinity(buttonValue, predicate, player, caller, caller);
-										  iPhase=reactionAnimation4;
+										  engine.declareIndirectAffinity(buttonValue, engine.predicate, engine.player, engine.caller, engine.caller);
+										  setPhase(reactionAnimation4);
 										  buttons[enter].setfEnabled(false);
 										  buttons[upArrow].setfEnabled(false);
 										  buttons[downArrow].setfEnabled(false);
@@ -1046,31 +1112,31 @@ public class Gossip extends JFrame implements ImageObserver {
 				  ++i;
 			  }
 			  // Here we check for mousedowns on a character's face
-			  for (i=0; (i<cCharacters); ++i) {
-				  Rectangle test=new Rectangle();
-				  BufferedImage image=faces[i][0].getImage();
-				  test.setRect(faces[i][0].getX(),faces[i][0].getY(),image.getWidth(),image.getHeight());
+			  for (i=0; (i<engine.cCharacters); ++i) {
+				  Rectangle test=new Rectangle(faceX[i],faceY[i],faceSize,faceSize);
+				  if ((faces[i]!=null)&&(faces[i].cellWidth>0))
+					  test.setSize(faces[i].cellWidth,faces[i].cellHeight);
 				  if (test.contains(e.getX(), e.getY())) {
 					  switch (iPhase) {
 						  case playerSelectsCallee: {
-							  if (i!=caller) {
-								  callee=i;
-								  iPhase=ring;
-								  playSound("Ringtones/"+names[callee], false);
+							  if (i!=engine.caller) {
+								  engine.playerCalls(i);
+								  setPhase(ring);
+								  playSound("Ringtones/"+names[engine.callee], false);
 								  helloTimer.start(); // initiate ring sound
 							  }
 							  break;
 						  }
 						  case playerSelectsPredicate: {
-							  if ((i!=caller)&(i!=callee)) {
-								  predicate=i;
-								  int iAffinity=getAffinityIndex(caller,predicate);
+							  if ((i!=engine.caller)&(i!=engine.callee)) {
+								  engine.playerChoosesPredicate(i);
+								  int iAffinity=engine.getAffinityIndex(engine.caller,engine.predicate);
 								  buttons[upArrow].setfEnabled(iAffinity<8);
 								  buttons[downArrow].setfEnabled(iAffinity>0);
 								  buttons[enter].setfEnabled(true);
 								  buttons[enter].setfVisible(true);
 								  buttonValue=iAffinity;
-								  iPhase=playerDeclaresDirectAffinity;
+								  setPhase(playerDeclaresDirectAffinity);
 							  }
 							  break;
 						  }
@@ -1085,41 +1151,10 @@ public class Gossip extends JFrame implements ImageObserver {
 		  public void mouseExited(MouseEvent e) { }
 			//------------------------------------------------------------
 		  public void mouseEntered(MouseEvent e) { }
-		});		
-	
-	}
-// ************************************************************
-	private class History {
-		private int iSpeaker;
-		private int iSource;
-		private int iListener;
-		private int iPredicate;
-		private int iValue;
-		// ------------------------------------------------------------
-		public int getiSpeaker() {
-			return iSpeaker;
-		}
-		public int getiSource() {
-			return iSource;
-		}
-		public int getiListener() {
-			return iListener;
-		}
-		public int getiPredicate() {
-			return iPredicate;
-		}
-		public int getiValue() {
-			return iValue;
-		}
-		// ------------------------------------------------------------
-		History(int tiSpeaker, int tiListener, int tiSource, int tiPredicate,int tiValue) {
-			iSpeaker=tiSpeaker;
-			iListener=tiListener;
-			iSource=tiSource;
-			iPredicate=tiPredicate;
-			iValue=tiValue;
-		}		
-		// ------------------------------------------------------------			
+		};
+		if (frame!=null)
+			frame.addMouseListener(mouseListener);
+		timeline.event("constructed");
 	}
 // ************************************************************
 	// A simple class that ties a screen location to an image
@@ -1142,6 +1177,8 @@ public class Gossip extends JFrame implements ImageObserver {
 		// ------------------------------------------------------------
 		public BufferedImage getImage() { return image; }
 		// ------------------------------------------------------------
+		public void setImage(BufferedImage tImage) { image=tImage; }
+		// ------------------------------------------------------------
 		
 	}
 // ************************************************************
@@ -1193,11 +1230,14 @@ public class Gossip extends JFrame implements ImageObserver {
 		private boolean fRadioed;	// special button only for the case of the six radio buttons in the options screen
 		private int x, y;			// for faster access to button coordinates
 		private ImagePlusLocation mainImage, pressedImage, disabledImage;
+		private final String name;	// the images are res/Buttons/<name>[Pressed|Disabled].png
 		// ------------------------------------------------------------
-		RoundButton(String name, int tx, int ty) {
-	   	mainImage=new ImagePlusLocation(readImage("Buttons/"+name));
-	   	pressedImage=new ImagePlusLocation(readImage("Buttons/"+name+"Pressed"));
-	   	disabledImage=new ImagePlusLocation(readImage("Buttons/"+name+"Disabled"));
+		// The images are not read here but by load(), on a loader thread.
+		RoundButton(String tName, int tx, int ty) {
+			name=tName;
+	   	mainImage=new ImagePlusLocation(null);
+	   	pressedImage=new ImagePlusLocation(null);
+	   	disabledImage=new ImagePlusLocation(null);
 	   	mainImage.setLocation(tx,ty);
 	   	fPressed=false;
 	   	fEnabled=false;
@@ -1207,45 +1247,228 @@ public class Gossip extends JFrame implements ImageObserver {
 	   	y=ty;
 		}
 		// ------------------------------------------------------------
+		void load() {
+			mainImage.setImage(onBlack(readImage("Buttons/"+name)));
+			pressedImage.setImage(onBlack(readImage("Buttons/"+name+"Pressed")));
+			disabledImage.setImage(onBlack(readImage("Buttons/"+name+"Disabled")));
+		}
+		// ------------------------------------------------------------
 		public int getX() { return mainImage.getX(); }
 		// ------------------------------------------------------------
 		public int getY() { return mainImage.getY(); }
 		// ------------------------------------------------------------
 	}
 // ************************************************************
-	// just a file-reading routine
+	// Starts building the face atlases of everybody in this game who has neither one
+	// nor one on the way. Characters who never appear never have their faces read.
+	// The atlases are built side by side on the loader threads, and nothing waits for
+	// them: this is called on the event dispatch thread as soon as the cast size is
+	// chosen, and facesTimer puts each atlas in faces[] once it is done. Until then
+	// the character is drawn with just a name.
+	void loadFaces() {
+		for (int i=0; (i<engine.cCharacters); ++i) {
+			if ((faces[i]==null)&&(faceLoads[i]==null)) {
+				final int iCharacter=i;
+				faceLoads[i]=loaders.submit(new Callable<FaceAtlas>() {
+					public FaceAtlas call() {
+						long start=timeline.now();
+						FaceAtlas atlas=new FaceAtlas(assets, names[iCharacter], affinityLevelText);
+						timeline.span("Faces of "+names[iCharacter], start);
+						return atlas;
+					}
+				});
+			}
+		}
+		// Without a window the benchmarks pick the atlases up with awaitFaces() instead.
+		if ((frame!=null)&&(!facesTimer.isRunning()))
+			facesTimer.start();
+	}
+// ************************************************************
+	// Puts every atlas that is done into faces[], and says whether there are still
+	// some on the way. Never waits.
+	boolean fFacesPending() {
+		boolean fPending=false;
+		for (int i=0; (i<maxCharacters); ++i) {
+			if (faceLoads[i]==null)
+				continue;
+			if (faceLoads[i].isDone()) {
+				faces[i]=(FaceAtlas)result(faceLoads[i]);
+				faceLoads[i]=null;
+			}
+			else
+				fPending=true;
+		}
+		return fPending;
+	}
+// ************************************************************
+	// Waits for the atlases that are on the way and puts them in faces[].
+	void awaitFaces() {
+		for (int i=0; (i<maxCharacters); ++i) {
+			if (faceLoads[i]!=null) {
+				faces[i]=(FaceAtlas)result(faceLoads[i]);
+				faceLoads[i]=null;
+			}
+		}
+	}
+// ************************************************************
+	// Reads something on a loader thread, and notes on the timeline how long it took.
+	Future<?> load(final String what, final Runnable reader) {
+		return loaders.submit(new Runnable() {
+			public void run() {
+				long start=timeline.now();
+				reader.run();
+				timeline.span(what, start);
+			}
+		});
+	}
+// ************************************************************
+	// Waits for all of the given loads. A load that failed has already said why
+	// (AssetCache and SoundMixer report their own failures), so here it is only
+	// passed on if it was something unexpected.
+	static void await(ArrayList<Future<?>> loads) {
+		for (int i=0; (i<loads.size()); ++i) {
+			result(loads.get(i));
+			if (Thread.currentThread().isInterrupted())
+				return;
+		}
+	}
+	// ------------------------------------------------------------
+	// What one load came to, once it is done; null if the wait was interrupted.
+	static Object result(Future<?> load) {
+		try {
+			return load.get();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		}
+		catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		}
+	}
+// ************************************************************
+	// Whether everything needed to leave the splash screen is in. Never waits.
+	boolean fEssentialsLoaded() {
+		for (int i=0; (i<essentials.size()); ++i) {
+			if (!essentials.get(i).isDone())
+				return false;
+		}
+		await(essentials); // they are all done, so this only picks up what they did
+		return true;
+	}
+// ************************************************************
+	// Waits for every image and sound that was started loading in the constructor,
+	// and for any face atlases on the way.
+	// The benchmarks use this so that they measure drawing and not loading.
+	void awaitLoading() {
+		await(essentials);
+		await(extras);
+		awaitFaces();
+	}
+// ************************************************************
+	// Buttons are always drawn on black. Doing that once, here, saves Java2D from
+	// making a copy of the button on black every time it is drawn.
+	private BufferedImage onBlack(BufferedImage image) {
+		if (image==null)
+			return null;
+		BufferedImage opaque=new BufferedImage(image.getWidth(),image.getHeight(),BufferedImage.TYPE_INT_RGB);
+		Graphics2D g=opaque.createGraphics();
+		g.drawImage(image,0,0,Color.black,null);
+		g.dispose();
+		return opaque;
+	}
+// ************************************************************
+	// just a file-reading routine, except that the file is only read the first time
 	private BufferedImage readImage(String fileName) {
-      BufferedImage bi=null;
+		return assets.get(fileName);
+	}
+// ************************************************************
+	// Puts up the main display at the start of the player's turn, once the game has
+	// been set up: either just now, from the options, or by loading a saved game.
+	private void startPlaying() {
+		iDisplay=mainDisplay;
+		setPhase(playerSelectsCallee);
+		buttons[upArrow].setfVisible(true);
+		buttons[downArrow].setfVisible(true);
+		buttons[enter].setfVisible(true);
+		buttons[rules].setfVisible(true);
+		buttons[rules].setfEnabled(true);
+		buttons[tips].setfVisible(true);
+		buttons[tips].setfEnabled(true);
+		loadFaces(); // only starts what the options have not; the faces come in as they are built
+		// New code for March 11th, 2013
+		// This slows down the reaction for easier levels
+		if (engine.difficultyLevel==0)
+			reactionAnimationTimer.setInitialDelay(4000);
+		if (engine.difficultyLevel==1)
+			reactionAnimationTimer.setInitialDelay(3000);
+		// -Dgossip.lookaheadMillis=N gives the NPCs of hard games N ms to think ahead
+		// before each call; see LookaheadPlanner
+		long lookaheadMillis=Long.getLong("gossip.lookaheadMillis", 0);
+		if ((engine.difficultyLevel==2)&&(lookaheadMillis>0)) {
+			if (planner==null)
+				planner=new LookaheadPlanner(lookaheadMillis*1000000, Runtime.getRuntime().availableProcessors());
+			engine.planner=planner;
+		}
+		else
+			engine.planner=null;
+	}
+// ************************************************************
+	// If there is a saveFile, saves the game there. This is only done at the start of
+	// the player's turn, when no timers are running, so that is where a saved game
+	// always picks up again.
+	private void saveGame() {
+		if (saveFile==null)
+			return;
 		try {
-			bi=ImageIO.read(new File(System.getProperty("user.dir")+"/res/"+fileName+".png"));		
-      } catch (Exception e) { }
-		return bi;
+			GameSnapshot.save(engine, iPhase, saveFile);
+		}
+		catch (IOException e) {
+			System.err.println("Gossip: cannot save the game to "+saveFile+", so it will not be saved: "+e);
+			saveFile=null;
+		}
+	}
+// ************************************************************
+	// Instead of initialize(): carries on with a game saved by saveGame(), and goes on
+	// saving it in the same file. The game is loaded into an engine of its own, which
+	// only takes the place of this one once it has all loaded and turned out to be at
+	// the start of a turn; if it throws, the engine is as it was, ready for initialize().
+	private void continueGame(File file) throws IOException {
+		GossipEngine loaded=new GossipEngine(new GossipRandom(0), engine.player, engine.cast, new HeapPerceptions(engine.cCast));
+		int iSavedPhase=GameSnapshot.load(file, loaded);
+		if (iSavedPhase!=playerSelectsCallee)
+			throw new IOException(file+" was not saved at the start of a turn");
+		loaded.fDebug=engine.fDebug;
+		loaded.log=engine.log;
+		engine=loaded;
+		rand=engine.rand;
+		saveFile=file;
+		fQuit=false;
+		buttonValue=0;
+		iBackgroundCharacter=0;
+		await(essentials);
+		for (int i=0; (i<cButtons); ++i) {
+			buttons[i].setfVisible(false);
+			buttons[i].setfEnabled(false);
+			buttons[i].setfRadioed(false);
+		}
+		startPlaying();
+		timeline.interactive();
+
+		publishView();
+		frame.setVisible(true);
+		if ((renderer!=null)&&(!frame.getIgnoreRepaint()))
+			renderer.start();
 	}
 // ************************************************************
 	// this is executed every time the game is restarted.
 	private void  initialize() {
 		fQuit=false;
-		iTurn=0;
-		maxTurns=3;
-		cCharacters=4;
-		caller=player; // the first turn goes to the player
-		callee=nobody;
+		engine.newGame(); // the first turn goes to the player
 		buttonValue=0;
 		iDisplay=titleDisplay;
 		iBackgroundCharacter=0;
 		
-		// these values must be reset at the beginning of a game
-		for (int i=0; (i<maxCharacters); ++i) {
-			// initialize all affinities BEFORE initializing perceived affinities
-			int j=i+1;
-			while (j<maxCharacters) {
-				affinity[i][j]=2*rand.nextDouble()-1;
-				// make affinities semi-symmetric
-				affinity[j][i]=bSum(affinity[i][j],(2*rand.nextDouble()-1)/4);
-				++j;
-			}
-		}
-		
 		for (int i=0; (i<cButtons); ++i) {
 			buttons[i].setfVisible(false);
 			buttons[i].setfEnabled(false);
@@ -1254,7 +1477,78 @@ public class Gossip extends JFrame implements ImageObserver {
 		splashScreenTimer.start();	// we start this timer at the beginning of the game
 		
 		// I think it's safe to turn on the display now.
-		setVisible(true);
+		publishView();
+		frame.setVisible(true);
+		if ((renderer!=null)&&(!frame.getIgnoreRepaint()))
+			renderer.start();
+	}
+// ************************************************************
+	// Every change of phase goes through here, so that the replay log sees it.
+	void setPhase(int tiPhase) {
+		iPhase=tiPhase;
+		if (engine.log!=null) {
+			engine.log.phase(iPhase);
+			engine.log.flush(); // at most one phase is lost if the game is killed
+		}
+	}
+// ************************************************************
+	// Whatever asks for a frame has finished changing the game, so this is where the
+	// game is copied for paint() to draw; see GameView.
+	void publishView() {
+		view=new GameView(this);
+	}
+// ************************************************************
+	// These used to come with the JFrame; there is nothing to repaint without a window.
+	void repaint() {
+		publishView();
+		if (renderer!=null)
+			renderer.requestFrame();
+		else if (frame!=null)
+			frame.repaint();
+	}
+	// ------------------------------------------------------------
+	void repaint(int x, int y, int width, int height) {
+		publishView();
+		if (renderer!=null)
+			renderer.requestFrame(); // the whole frame is drawn every time anyway
+		else if (frame!=null)
+			frame.repaint(x,y,width,height);
+	}
+// ************************************************************
+	// Everything we draw is already loaded, so there is never anything more to wait for.
+	public boolean imageUpdate(Image image, int infoflags, int x, int y, int width, int height) {
+		return (infoflags&(ALLBITS|ABORT))==0;
+	}
+// ************************************************************
+	// Shows just the given buttons, all enabled, and hides the rest.
+	// RenderBenchmark uses this to set up each display the way the game would.
+	void showOnlyButtons(int... iButtons) {
+		for (int i=0; (i<cButtons); ++i) {
+			buttons[i].setfVisible(false);
+			buttons[i].setfEnabled(false);
+			buttons[i].setfPressed(false);
+			buttons[i].setfRadioed(false);
+		}
+		for (int i=0; (i<iButtons.length); ++i) {
+			buttons[iButtons[i]].setfVisible(true);
+			buttons[iButtons[i]].setfEnabled(true);
+		}
+	}
+// ************************************************************
+	// how button i is to be drawn, for GameView
+	int buttonLook(int i) {
+		if (!buttons[i].isfVisible())
+			return GameView.hidden;
+		else if ((buttons[i].isfPressed())|(buttons[i].isfRadioed()))
+			return GameView.pressed;
+		else if (buttons[i].isfEnabled())
+			return GameView.enabled;
+		else
+			return GameView.disabled;
+	}
+	// ------------------------------------------------------------
+	boolean isButtonRadioed(int i) {
+		return buttons[i].isfRadioed();
 	}
 // ************************************************************
 	/*
@@ -1263,32 +1557,34 @@ public class Gossip extends JFrame implements ImageObserver {
 	 */
 // ************************************************************
 	private void playSound(String fileName, boolean fPlayContinuously) {
-		if (!fDebug) {
-	      try {
-	        soundClip = AudioSystem.getClip();
-	        AudioInputStream inputStream = AudioSystem.getAudioInputStream(new File(System.getProperty("user.dir")+"/res/sounds/"+fileName+".wav"));
-	         soundClip.open(inputStream);
-	         if (fPlayContinuously) {
-	         	soundClip.loop(Clip.LOOP_CONTINUOUSLY);
-	         }
-	         soundClip.start(); 
-	       } catch (Exception e) {
-	         System.err.println(e.getMessage());
-	       }
-		}
+		if ((!fDebug)&&(sounds!=null))
+			sounds.play(fileName, fPlayContinuously);
 	}
 // ************************************************************
 	public void paint(Graphics g) {
+		shown=view;
+		if (GossipMetrics.metrics==null)
+			draw(g);
+		else {
+			long start=System.nanoTime();
+			draw(g);
+			GossipMetrics.metrics.painted(shown.iDisplay, System.nanoTime()-start);
+		}
+	}
+//************************************************************
+	// paint() itself, for the view in shown
+	private void draw(Graphics g) {
 		g2=(Graphics2D)g;
 		g2.setFont(nameFont);
 		g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
 		g2.setColor(Color.black);
 		g2.setStroke(new BasicStroke(3));
 		g2.fillRect(0,0,frameWidth,frameHeight);
-		switch (iDisplay) {
+		switch (shown.iDisplay) {
 			case titleDisplay: {
 				BufferedImage splashScreen=readImage("SplashScreen");
-				g2.drawImage(splashScreen,0,0,transparent,this);
+				g2.drawImage(splashScreen,0,0,this);
+				timeline.firstFrame();
 				break;
 			}
 			case optionsDisplay: {
@@ -1296,19 +1592,19 @@ public class Gossip extends JFrame implements ImageObserver {
 				g2.setColor(Color.white);
 				g2.setFont(optionsFont);
 				g2.drawString("How many players?",185,90);
-				if (buttons[easyButton].isfRadioed())
+				if (shown.isRadioed(easyButton))
 					g2.setColor(Color.magenta);
 				else
 					g2.setColor(Color.white);					
 				g2.drawString("Easy",128,462);
 
-				if (buttons[mediumButton].isfRadioed())
+				if (shown.isRadioed(mediumButton))
 					g2.setColor(Color.magenta);
 				else
 					g2.setColor(Color.white);					
 				g2.drawString("Medium",340,462);
 				
-				if (buttons[hardButton].isfRadioed())
+				if (shown.isRadioed(hardButton))
 					g2.setColor(Color.magenta);
 				else
 					g2.setColor(Color.white);					
@@ -1319,34 +1615,34 @@ public class Gossip extends JFrame implements ImageObserver {
 			}
 			case rulesDisplay: {
 				BufferedImage rulesScreen=readImage("Rules");
-				g2.drawImage(rulesScreen,0,0,transparent,this);
+				g2.drawImage(rulesScreen,0,0,this);
 				drawButtons();
 				break;
 			}
 			case backgroundDisplay: {
-				BufferedImage rulesScreen=readImage("Backgrounds/"+names[iBackgroundCharacter]);
-				g2.drawImage(rulesScreen,0,0,transparent,this);
+				BufferedImage rulesScreen=readImage("Backgrounds/"+names[shown.iBackgroundCharacter]);
+				g2.drawImage(rulesScreen,0,0,this);
 				drawButtons();
 				break;
 			}
 			case tipsDisplay: {
-				BufferedImage rulesScreen=readImage("Tips"+difficultyLevel);
-				g2.drawImage(rulesScreen,0,0,transparent,this);
+				BufferedImage rulesScreen=readImage("Tips"+shown.difficultyLevel);
+				g2.drawImage(rulesScreen,0,0,this);
 				drawButtons();
 				break;
 			}
 			case endGameDisplay: {
-				drawHexagon();
+				drawBoard();
 				g2.setFont(nameFont);
 				g2.drawString("Game Over",turnIndicatorX-50, turnIndicatorY);
 				drawButtons();
-				int[] iWinnerList=new int[cCharacters];
-				double[] winnerScore=new double[cCharacters];
-				for (int i=0; (i<cCharacters); ++i) {
+				int[] iWinnerList=new int[shown.cCharacters];
+				double[] winnerScore=new double[shown.cCharacters];
+				for (int i=0; (i<shown.cCharacters); ++i) {
 					iWinnerList[i]=i;
-					winnerScore[i]=popularity[i][iTurn]-popularity[i][0];				  
+					winnerScore[i]=shown.popularity(i)-shown.startPopularity(i);				  
 				}
-				for (int i=1; (i<cCharacters); ++i) {
+				for (int i=1; (i<shown.cCharacters); ++i) {
 					int j=i;
 					boolean atTheTop=false;
 					while (!atTheTop) {
@@ -1362,8 +1658,8 @@ public class Gossip extends JFrame implements ImageObserver {
 						atTheTop=(j==0);
 					}
 				}
-				for (int i=0; (i<cCharacters); ++i) {
-					int iAffinity=boundedToInteger(bSum(popularity[iWinnerList[i]][iTurn],-popularity[iWinnerList[i]][0]));
+				for (int i=0; (i<shown.cCharacters); ++i) {
+					int iAffinity=GossipEngine.boundedToInteger(engine.bSum(shown.popularity(iWinnerList[i]),-shown.startPopularity(iWinnerList[i])));
 					drawHalo(iWinnerList[i],affinityLevelColor[iAffinity],true);
 					String place="";
 					switch (i) {
@@ -1378,26 +1674,31 @@ public class Gossip extends JFrame implements ImageObserver {
 					int nameX=0;
 					int k=iWinnerList[i];
 					if ((k==0)|(k==1)|(k==5))
-						nameX=faces[k][0].getX()+140;
+						nameX=faceX[k]+140;
 					else
-						nameX=faces[k][0].getX()-130;
-					g2.drawString(place,nameX,faces[k][0].getY()+110);
+						nameX=faceX[k]-130;
+					g2.drawString(place,nameX,faceY[k]+110);
 				}
 				break;
 			}
 			case mainDisplay: {
-				drawHexagon();
+				drawBoard();
 				g2.setFont(turnFont);
-				g2.drawString(String.valueOf(maxTurns-iTurn),turnIndicatorX, turnIndicatorY);
+				int cTurnsLeft=shown.maxTurns-shown.iTurn;
+				if (cTurnsLeft>=turnLabels.length)
+					turnLabels=Arrays.copyOf(turnLabels,cTurnsLeft+1);
+				if (turnLabels[cTurnsLeft]==null)
+					turnLabels[cTurnsLeft]=String.valueOf(cTurnsLeft);
+				g2.drawString(turnLabels[cTurnsLeft],turnIndicatorX, turnIndicatorY);
 				g2.setFont(nameFont);
 				drawButtons();
 				//  handling for different phases		
-				switch (iPhase) {
+				switch (shown.iPhase) {
 					case playerSelectsCallee: { // prompt player for selection, haloize candidates
-						drawHalo(caller, Color.white, true);
-						postMessage("select somebody to call");
-						for (int j=0; (j<cCharacters); ++j) {
-							if (j!=player) {
+						drawHalo(shown.caller, Color.white, true);
+						postMessage(MessageLayouts.key(fixedMessage,0,0,0,0), "select somebody to call");
+						for (int j=0; (j<shown.cCharacters); ++j) {
+							if (j!=shown.player) {
 								drawHalo(j,Color.blue,false);
 							}
 						}
@@ -1409,63 +1710,69 @@ public class Gossip extends JFrame implements ImageObserver {
 					}
 					case playerSelectsPredicate: { // prompt player, haloize candidates
 						drawSolidHalos(2);
-						drawFace(callee,9);
-						postMessage("Select somebody to gossip about");
-						for (int j=0; (j<cCharacters); ++j) {
-							if ((j!=player)&(j!=callee))
+						drawFace(shown.callee,9);
+						postMessage(MessageLayouts.key(fixedMessage,1,0,0,0), "Select somebody to gossip about");
+						for (int j=0; (j<shown.cCharacters); ++j) {
+							if ((j!=shown.player)&(j!=shown.callee))
 								drawHalo(j,Color.magenta,false);
 						}
 						break;
 					}
 					case playerDeclaresDirectAffinity: { // player edits affinity
 						drawSolidHalos(3);
-						hilightSpoke(caller,predicate, false);
+						hilightSpoke(shown.caller,shown.predicate, false);
 						break;
 					}
 					 // quick reaction of listener to player
 					case reactionAnimation1: case reactionAnimation2: case reactionAnimation3: case reactionAnimation4:{
 						// add a message explaining this animation
 						int iSpeaker=0;
-						if (player==caller)
-							iSpeaker=callee;
+						if (shown.player==shown.caller)
+							iSpeaker=shown.callee;
 						else
-							iSpeaker=caller;
-						String message=names[iSpeaker]+" ";
-						if ((iPhase==reactionAnimation1)|(iPhase==reactionAnimation3)) {
+							iSpeaker=shown.caller;
+						boolean fDirect=(shown.iPhase==reactionAnimation1)|(shown.iPhase==reactionAnimation3);
+						if (fDirect) {
 							// direct reaction							
-							drawFace(callee,feedbackFace[iLikeWhatIHear][iSuspect]);
+							drawFace(shown.callee,feedbackFace[shown.iLikeWhatIHear][shown.iSuspect]);
 							drawSolidHalos(3);
-							hilightSpoke(iSpeaker,player, true);
-							message+=directFeedback[iSpeaker][iLikeWhatIHear][iSuspect];
+							hilightSpoke(iSpeaker,shown.player, true);
 						}
 						else { // indirect reaction
-							drawFace(callee,feedbackFace[2][iSuspect]);
+							drawFace(shown.callee,feedbackFace[2][shown.iSuspect]);
 							drawSolidHalos(3);
-							hilightSpoke(iSpeaker,player, true);
-							message+=indirectFeedback[iSpeaker][2-iSuspect];
+							hilightSpoke(iSpeaker,shown.player, true);
+						}
+						long key=MessageLayouts.key(reactionMessage,iSpeaker,fDirect ? 1 : 0,shown.iLikeWhatIHear,shown.iSuspect);
+						TextLayout[] message=messages.find(g2,key);
+						if (message==null) {
+							if (fDirect)
+								message=messages.add(key,names[iSpeaker]+" "+directFeedback[iSpeaker][shown.iLikeWhatIHear][shown.iSuspect]);
+							else
+								message=messages.add(key,names[iSpeaker]+" "+indirectFeedback[iSpeaker][2-shown.iSuspect]);
 						}
 						postMessage(message);
 						break;
 					}
 					case npcRespondsDirectAffinity: { // display NPC affinity
 						drawSolidHalos(3);
-						hilightSpoke(callee,predicate, false);
+						hilightSpoke(shown.callee,shown.predicate, false);
 						break;
 					}
 					case playerHangsUp: {
-						postMessage("Goodbye!");
+						postMessage(MessageLayouts.key(fixedMessage,2,0,0,0), "Goodbye!");
 						break;
 					}
 					case npcTurn: {
-						switch (subPhase) {
+						switch (shown.subPhase) {
 							case 0: case 2:{
-								int iFace=(int)(cAffinityLevels*rand.nextDouble());
-								drawFace(caller,iFace);
+								int iFace=(int)(cAffinityLevels*animationRand.nextDouble());
+								drawFace(shown.caller,iFace);
 								break;
 							}
 							case 1: case 3:{
-								int iFace=(int)(cAffinityLevels*rand.nextDouble());
-								drawFace(callee,iFace);
+								int iFace=(int)(cAffinityLevels*animationRand.nextDouble());
+								drawFace(shown.callee,iFace);
 								break;
 							}
 						}
@@ -1473,42 +1780,46 @@ public class Gossip extends JFrame implements ImageObserver {
 					}
 					case npcCallsPlayer: { // calling animation
 						drawSolidHalos(2);
-						postMessage(names[caller]+" is calling");
+						long key=MessageLayouts.key(callingMessage,shown.caller,0,0,0);
+						TextLayout[] message=messages.find(g2,key);
+						if (message==null)
+							message=messages.add(key,names[shown.caller]+" is calling");
+						postMessage(message);
 						break;
 					}
 					case npcDeclaresDirectAffinity: { // display NPC affinity
 						drawSolidHalos(3);
-						hilightSpoke(caller,predicate, false);
-						drawFace(callee,9);
+						hilightSpoke(shown.caller,shown.predicate, false);
+						drawFace(shown.callee,9);
 						break;
 					}
 					case playerRespondsDirectAffinity: { // player edits affinity
 						drawSolidHalos(3);
-						hilightSpoke(callee,predicate, false);
+						hilightSpoke(shown.callee,shown.predicate, false);
 						break;
 					}
 					case npcHangsUp: { // goodbye animation
-						postMessage("<Goodbye!>");
+						postMessage(MessageLayouts.key(fixedMessage,3,0,0,0), "<Goodbye!>");
 						break;
 					}
 					case playerDeclaresIndirectAffinity: { 
 						drawSolidHalos(3);
-						hilightSpoke(predicate, callee, player);
+						hilightSpoke(shown.predicate, shown.callee, shown.player);
 						break;
 					}
 					case npcRespondsIndirectAffinity: { 
 						drawSolidHalos(3);
-						hilightSpoke(predicate, player, callee);
+						hilightSpoke(shown.predicate, shown.player, shown.callee);
 						break;
 					}
 					case npcDeclaresIndirectAffinity: { 
 						drawSolidHalos(3);
-						hilightSpoke(predicate, player, caller);
+						hilightSpoke(shown.predicate, shown.player, shown.caller);
 						break;
 					}
 					case playerRespondsIndirectAffinity: { 
 						drawSolidHalos(3);
-						hilightSpoke(predicate, caller, player);
+						hilightSpoke(shown.predicate, shown.caller, shown.player);
 						break;
 					}
 				} // end of switch statement
@@ -1519,23 +1830,95 @@ public class Gossip extends JFrame implements ImageObserver {
 //************************************************************
 	private void drawButtons() {
 		for (int i=0; (i<cButtons); ++i) {
-			if (buttons[i].isfVisible()) {
-				if ((buttons[i].isfPressed())|(buttons[i].isfRadioed())) {
-					g2.drawImage(buttons[i].getPressedImage().getImage(),buttons[i].getX(),buttons[i].getY(),Color.black,this);				
+			switch (shown.buttonLook(i)) {
+				case GameView.pressed: {
+					g2.drawImage(buttons[i].getPressedImage().getImage(),buttons[i].getX(),buttons[i].getY(),this);
+					break;
 				}
-				else if (buttons[i].isfEnabled()) {
-					g2.drawImage(buttons[i].getMainImage().getImage(),buttons[i].getX(),buttons[i].getY(),Color.black,this);				
+				case GameView.enabled: {
+					g2.drawImage(buttons[i].getMainImage().getImage(),buttons[i].getX(),buttons[i].getY(),this);
+					break;
 				}
-				else {
-					g2.drawImage(buttons[i].getDisabledImage().getImage(),buttons[i].getX(),buttons[i].getY(),Color.black,this);				
+				case GameView.disabled: {
+					g2.drawImage(buttons[i].getDisabledImage().getImage(),buttons[i].getX(),buttons[i].getY(),this);
+					break;
 				}
 			}
 		}		
 	}
+//************************************************************
+	/*
+	 * The hexagon, with its spokes and the faces at rest, is the same from one frame
+	 * to the next until somebody's feelings change enough to change the colour of a
+	 * spoke. So it is drawn into an image of its own, and each frame just copies that
+	 * image to the screen and draws the halos, highlighted spokes and messages on top.
+	 *
+	 * The board is drawn again whenever anything it shows is different: that is the
+	 * colour of each spoke, how thick the spokes are, who the player is and how many
+	 * characters there are. All of those are small integers, which are collected into
+	 * boardKey and compared with what the board was last drawn from.
+	 */
+	private void drawBoard() {
+		if (!isBoardCurrent()) {
+			if (board==null) {
+				if ((frame!=null)&&(frame.getGraphicsConfiguration()!=null))
+					board=frame.getGraphicsConfiguration().createCompatibleImage(frameWidth,frameHeight);
+				else
+					board=new BufferedImage(frameWidth,frameHeight,BufferedImage.TYPE_INT_RGB);
+			}
+			Graphics2D screen=g2;
+			g2=board.createGraphics();
+			g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+			g2.setColor(Color.black);
+			g2.fillRect(0,0,frameWidth,frameHeight);
+			drawHexagon();
+			g2.dispose();
+			g2=screen;
+		}
+		g2.drawImage(board,0,0,null);
+		// leave things as drawHexagon would have
+		g2.setColor(Color.white);
+		g2.setFont(nameFont);
+	}
+//************************************************************
+	// Fills in boardKey for what the board ought to show, and says whether it already does.
+	private boolean isBoardCurrent() {
+		int cKey=shown.cCharacters*shown.cCharacters+4;
+		if (newBoardKey.length!=cKey)
+			newBoardKey=new int[cKey];
+		int k=0;
+		newBoardKey[k++]=shown.cCharacters;
+		newBoardKey[k++]=shown.player;
+		newBoardKey[k++]=(shown.iTurn<shown.maxTurns) ? 0 : 1;
+		int facesIn=0;	// the board is drawn again as the faces come in
+		for (int i=0; (i<shown.cCharacters); ++i) {
+			if (shown.face(i)!=null)
+				facesIn|=1<<i;
+		}
+		newBoardKey[k++]=facesIn;
+		for (int i=0; (i<shown.cCharacters); ++i) {
+			for (int j=0; (j<shown.cCharacters); ++j)
+				newBoardKey[k++]=(i==j) ? 0 : spokeLevel(i,j);
+		}
+		if ((board!=null)&&Arrays.equals(newBoardKey,boardKey))
+			return true;
+		int[] old=boardKey;
+		boardKey=newBoardKey;
+		newBoardKey=old;
+		return false;
+	}
+//************************************************************
+	// the affinity level, and so the colour, of the spoke from i to j
+	private int spokeLevel(int i, int j) {
+		if ((shown.iDisplay==endGameDisplay)||(shown.difficultyLevel==0))
+			return (int)(cAffinityLevels*((shown.affinity(i,j)+1)/2));
+		else
+			return (int)(cAffinityLevels*((shown.perceivedAffinity(shown.player,i,j)+1)/2));
+	}
 //************************************************************
 	private void drawHexagon() {
 		int arrowHeadSize;
-		if (iTurn<maxTurns) {
+		if (shown.iTurn<shown.maxTurns) {
 			g2.setStroke(new BasicStroke(3));
 			arrowHeadSize=5;
 		}
@@ -1543,19 +1926,10 @@ public class Gossip extends JFrame implements ImageObserver {
 			g2.setStroke(new BasicStroke(5));
 			arrowHeadSize=7;
 		}
-		for (int i=0; (i<cCharacters); ++i) {
-			for (int j=0; (j<cCharacters); ++j) {
+		for (int i=0; (i<shown.cCharacters); ++i) {
+			for (int j=0; (j<shown.cCharacters); ++j) {
 				if (i!=j) {
-					int iAffinity=cAffinityLevels; // this makes the arrow transparent
-					if (iDisplay==endGameDisplay) {
-						iAffinity=(int)(cAffinityLevels*((affinity[i][j]+1)/2));
-					}
-					else {
-						if (difficultyLevel==0)
-							iAffinity=(int)(cAffinityLevels*((affinity[i][j]+1)/2));							
-						else
-							iAffinity=(int)(cAffinityLevels*((perceivedAffinity[player][i][j]+1)/2));
-					}
+					int iAffinity=spokeLevel(i,j);
 					double deltaX=hexagonX[j]-hexagonX[i];
 					double deltaY=hexagonY[j]-hexagonY[i];
 					double lengthX=deltaX*0.48;
@@ -1575,50 +1949,47 @@ public class Gossip extends JFrame implements ImageObserver {
 		}
 	}
 //************************************************************
-	private void postMessage(String messageText) {
+	// Draws a message in the bottom right corner. The lines come from MessageLayouts,
+	// already wrapped and shaped.
+	private void postMessage(TextLayout[] message) {
 		g2.setFont(messageFont);
-		int maxChars=25;
 		g2.setColor(Color.black);
 		g2.fillRect(messageX,messageY-25,frameWidth-messageX,60);		
 		g2.setColor(Color.white);
-		String line=messageText;
-		int y=0;
-		while (line.length()>maxChars) {
-			String shortLine=line.substring(0,maxChars);
-			int cChars=shortLine.length()-1;
-			while (!shortLine.endsWith(" ")) {
-				shortLine=shortLine.substring(0,--cChars);
-			}
-			g2.drawString(shortLine,messageX,messageY+y);
-			y+=28;
-			line=line.substring(cChars);
-		}
-		g2.drawString(line,messageX,messageY+y);
+		for (int i=0; (i<message.length); ++i)
+			message[i].draw(g2,messageX,messageY+28*i);
+	}
+	// ------------------------------------------------------------
+	// For messages that never change, so that there is nothing to build.
+	private void postMessage(long key, String messageText) {
+		TextLayout[] message=messages.find(g2,key);
+		if (message==null)
+			message=messages.add(key,messageText);
+		postMessage(message);
 	}
 // ************************************************************
 	private void drawFace(int iWho, int iAffinity) {
-		if (faces[iWho][0]!=null) {
-			g2.drawImage(faces[iWho][iAffinity].getImage(),faces[iWho][0].getX(),faces[iWho][0].getY(),transparent,this);
-			g2.setColor(Color.white);
-			g2.setFont(nameFont);
-			int nameX=0;
-			if ((iWho==0)|(iWho==1)|(iWho==5))
-				nameX=faces[iWho][0].getX()+140;
-			else
-				nameX=faces[iWho][0].getX()-80;
-			if (player==iWho)
-				g2.drawString("You",nameX,faces[iWho][0].getY()+75);
-			else	
-				g2.drawString(names[iWho],nameX,faces[iWho][0].getY()+75);					
-		}
+		if (shown.face(iWho)!=null)
+			shown.face(iWho).draw(g2,iAffinity,faceX[iWho],faceY[iWho],this);
+		g2.setColor(Color.white);
+		g2.setFont(nameFont);
+		int nameX=0;
+		if ((iWho==0)|(iWho==1)|(iWho==5))
+			nameX=faceX[iWho]+140;
+		else
+			nameX=faceX[iWho]-80;
+		if (shown.player==iWho)
+			g2.drawString("You",nameX,faceY[iWho]+75);
+		else	
+			g2.drawString(names[iWho],nameX,faceY[iWho]+75);					
 	}
 // ************************************************************
 	private void drawSolidHalos(int cHalos) {
-		drawHalo(caller, Color.white, true);
+		drawHalo(shown.caller, Color.white, true);
 		if (cHalos>1)
-			drawHalo(callee, Color.blue, true);
+			drawHalo(shown.callee, Color.blue, true);
 		if (cHalos>2)
-			drawHalo(predicate, Color.magenta, true);
+			drawHalo(shown.predicate, Color.magenta, true);
 	}
 // ************************************************************
 	private void hilightSpoke(int iFromCharacter, int iToCharacter, boolean fIsDashed) {
@@ -1629,17 +2000,17 @@ public class Gossip extends JFrame implements ImageObserver {
 	   	 BasicStroke dashed = new BasicStroke(10.0f, BasicStroke.CAP_BUTT, 
 	                               BasicStroke.JOIN_MITER, 10.0f, dash1, 0.0f);
 			g2.setStroke(dashed);
-			if ((iPhase==reactionAnimation1)|(iPhase==reactionAnimation3)) 
-				iAffinity=feedbackFace[iLikeWhatIHear][iSuspect];
+			if ((shown.iPhase==reactionAnimation1)|(shown.iPhase==reactionAnimation3)) 
+				iAffinity=feedbackFace[shown.iLikeWhatIHear][shown.iSuspect];
 			else
-				iAffinity=feedbackFace[2][iSuspect];
+				iAffinity=feedbackFace[2][shown.iSuspect];
 		}
 		else {
 			g2.setStroke(new BasicStroke(8));
-			if (iFromCharacter==player)
-				iAffinity=buttonValue;
+			if (iFromCharacter==shown.player)
+				iAffinity=shown.buttonValue;
 			else
-				iAffinity=getAffinityIndex(iFromCharacter,iToCharacter);
+				iAffinity=shown.getAffinityIndex(iFromCharacter,iToCharacter);
 		}
 	    try {
 	   	 g2.setColor(affinityLevelColor[iAffinity]);
@@ -1658,21 +2029,27 @@ public class Gossip extends JFrame implements ImageObserver {
 		drawArrowHead(g2,line,11);
 		drawFace(iFromCharacter,iAffinity);
 		if (!fIsDashed) {
-			if (iDisplay==mainDisplay) {
-				String quote;
-				if (iFromCharacter==player) {
-					quote="You say that ";
+			if (shown.iDisplay==mainDisplay) {
+				int kind=(iFromCharacter==shown.player) ? playerDirectQuote : directQuote;
+				long key=MessageLayouts.key(kind,iFromCharacter,iToCharacter,iAffinity,0);
+				TextLayout[] message=messages.find(g2,key);
+				if (message==null) {
+					String quote;
+					if (iFromCharacter==shown.player) {
+						quote="You say that ";
+					}
+					else
+						quote=names[iFromCharacter]+" says that ";
+					quote+=names[iToCharacter]+" is ";
+					// add description based on gender of iToCharacter
+					if (shown.isMale(iToCharacter))
+						quote+=guyDescription[iFromCharacter][iAffinity];
+					else
+						quote+=galDescription[iFromCharacter][iAffinity];
+					quote+=".";
+					message=messages.add(key,quote);
 				}
-				else
-					quote=names[iFromCharacter]+" says that ";
-				quote+=names[iToCharacter]+" is ";
-				// add description based on gender of iToCharacter
-				if ((iToCharacter==1)|(iToCharacter==2)|(iToCharacter==4))
-					quote+=guyDescription[iFromCharacter][iAffinity];
-				else
-					quote+=galDescription[iFromCharacter][iAffinity];
-				quote+=".";
-				postMessage(quote);
+				postMessage(message);
 			}
 		}
 	}
@@ -1681,10 +2058,10 @@ public class Gossip extends JFrame implements ImageObserver {
 		// This version handles indirect statements of affinity
 		g2.setStroke(new BasicStroke(7));
 		int iPerceivedAffinity=0;
-		if (iSpeaker==player)
-			iPerceivedAffinity=buttonValue;
+		if (iSpeaker==shown.player)
+			iPerceivedAffinity=shown.buttonValue;
 		else
-			iPerceivedAffinity=getPAffinityIndex(iSpeaker,iFromCharacter,iToCharacter);
+			iPerceivedAffinity=shown.getPAffinityIndex(iSpeaker,iFromCharacter,iToCharacter);
 //		g2.setColor(uncertainifyColor(iPerceivedAffinity, certainty[speaker][fromCharacter][toCharacter]));
 		g2.setColor(affinityLevelColor[iPerceivedAffinity]);
 		double deltaX=hexagonX[iToCharacter]-hexagonX[iFromCharacter];
@@ -1698,22 +2075,28 @@ public class Gossip extends JFrame implements ImageObserver {
 		drawArrowHead(g2, line,11);
 		drawFace(iFromCharacter,iPerceivedAffinity);
 
-		String quote;
-		if (iSpeaker==player)
-			quote="You say \"";
-		else 
-			quote=names[iSpeaker]+" says \"";
-		quote+=names[iFromCharacter]+" told me that you are ";
-		// add description based on gender of iToCharacter
-		if ((iToCharacter==1)|(iToCharacter==2)|(iToCharacter==4))
-			quote+=guyDescription[iFromCharacter][iPerceivedAffinity];
-		else
-			quote+=galDescription[iFromCharacter][iPerceivedAffinity];
-		quote+=".\"";
-		postMessage(quote);
+		int kind=(iSpeaker==shown.player) ? playerIndirectQuote : indirectQuote;
+		long key=MessageLayouts.key(kind,iSpeaker,iFromCharacter,iToCharacter,iPerceivedAffinity);
+		TextLayout[] message=messages.find(g2,key);
+		if (message==null) {
+			String quote;
+			if (iSpeaker==shown.player)
+				quote="You say \"";
+			else 
+				quote=names[iSpeaker]+" says \"";
+			quote+=names[iFromCharacter]+" told me that you are ";
+			// add description based on gender of iToCharacter
+			if (shown.isMale(iToCharacter))
+				quote+=guyDescription[iFromCharacter][iPerceivedAffinity];
+			else
+				quote+=galDescription[iFromCharacter][iPerceivedAffinity];
+			quote+=".\"";
+			message=messages.add(key,quote);
+		}
+		postMessage(message);
 		
 		// now add the big quotation marks around the face
-		g2.drawImage(quotationMarks,faces[iFromCharacter][0].getX()-28,faces[iFromCharacter][0].getY()-10,transparent,this);
+		g2.drawImage(quotationMarks,faceX[iFromCharacter]-28,faceY[iFromCharacter]-10,this);
 		
 	}
 // ************************************************************
@@ -1751,227 +2134,32 @@ public class Gossip extends JFrame implements ImageObserver {
 // ************************************************************
 	/*
 	 * This ends the section of code dedicated to graphic display.
-	 * The next section contains the algorithms that drive the smarts of the game.
-	 * This is all number-crunching with no references to anything peculiar
-	 * to input or graphics.
-	 * All the code from here to the end of the program is confidential
-	 *   and shall not be communicated to any party.
+	 * The algorithms that drive the smarts of the game now live in GossipEngine;
+	 * all that remains here is the glue that runs an NPC's turn on the screen.
 	 */
-// ************************************************************
-	private double blend(double from, double to, double weight) {
-		if (weight<=-1) weight=-1;
-		if (weight>=1) weight=1;
-		// this is a conversion from BNumber to UNumber
-		double uWeightingFactor = 1-((1-weight)/2);
-		double x = to*uWeightingFactor + from*(1.0f-uWeightingFactor);	
-		return x;
-	}
-//**********************************************************************	 
-	public double bSum(double a, double b) {
-		double x2 = boundedInverseTransform(a);
-		double x1 = boundedInverseTransform(b);
-		return boundedTransform(x1+x2);
-	}
-//**********************************************************************	 
-	double boundedInverseTransform(double boundedNumber) {
-		if (boundedNumber > 0.0f)
-			return (1.0f / (1.0f - boundedNumber)) -1.0f;
-		else
-			return 1.0f - (1.0f / (1.0f + boundedNumber));
-	}
-//**********************************************************************	
-	private double boundedTransform(double unboundedNumber) {
-		if (unboundedNumber > 0.0f)
-			return 1.0 - (1.0 / (1.0 + unboundedNumber));
-		else
-			return (1.0 / (1.0 - unboundedNumber)) -1.0;
-		}
-// ************************************************************
-	private int getAffinityIndex(int iFromCharacter, int iToCharacter) {
-		int AffinityIndex=boundedToInteger(affinity[iFromCharacter][iToCharacter]);
-		return AffinityIndex;
-	}
-// ************************************************************
-	private int getPAffinityIndex(int iPerceiver, int iFromCharacter, int iToCharacter) {
-		int iAffinity=boundedToInteger(perceivedAffinity[iPerceiver][iFromCharacter][iToCharacter]);
-		return iAffinity;
-	}
-// ************************************************************
-	private void declareIndirectAffinity(int iValue, 
-														int tiSource, 
-														int tiSpeaker, 
-														int tiListener, 
-														int tiPredicate) {
-		// Record the declaration in the history book
-		historyBook.add(new History(tiSpeaker, tiListener, tiSource, tiPredicate, iValue));
-		
-		setSuspiciousness(tiSpeaker, tiSource, tiPredicate, tiListener);
-		iLikeWhatIHear=iValue/3; // flattery works
-		// change affinity based on agreement
-		double before=affinity[tiListener][tiSpeaker];
-		// scale down magnitude of flattery effect
-		double flattery=vain[tiListener]*(integerToBounded(iValue)-perceivedAffinity[tiListener][tiSource][tiListener])/4;
-		affinity[tiListener][tiSpeaker]=bSum(affinity[tiListener][tiSpeaker],0.08-flattery);
-		if (fDebug) 
-			flatteryDamage+=affinity[tiListener][tiSpeaker]-before;
-		iLikeWhatIHear=(cAffinityLevels-boundedToInteger(flattery))/3;
-	}
-// ************************************************************
-	private void declareAffinity(int iValue, int tiSpeaker, int tiListener, int tiPredicate) {
-		// Record the declaration in the history book
-		historyBook.add(new History(tiSpeaker, tiListener, tiSpeaker, tiPredicate, iValue));
-
-		double bValue=integerToBounded(iValue);
-		if (tiSpeaker==player) {
-			affinity[tiSpeaker][tiPredicate]=bValue;
-			perceivedAffinity[tiSpeaker][tiSpeaker][tiPredicate]=bValue;
-		}
-		
-		setSuspiciousness(tiSpeaker, tiSpeaker, tiPredicate, tiListener);
-		double disagreement=(Math.abs(bValue-affinity[tiListener][tiPredicate]))/4;
-		// change affinity based on agreement
-		double before=affinity[tiListener][tiSpeaker];
-		affinity[tiListener][tiSpeaker]=bSum(affinity[tiListener][tiSpeaker],0.08-disagreement);
-		if (fDebug) {
-			if ((tiSpeaker==0))
-				System.out.println(disagreement+"  "+before+"  "+affinity[tiListener][tiSpeaker]);
-			flatteryDamage+=affinity[tiListener][tiSpeaker]-before;
-		}
-		iLikeWhatIHear=(cAffinityLevels-boundedToInteger(disagreement))/3;
-	}
-// ************************************************************
-	private void setSuspiciousness(int tiSpeaker, int tiSource, int tiPredicate, int tiListener) {
-		ArrayList<History> pastTestimony=new ArrayList<History>();
-		for (int i=0; (i<historyBook.size()); ++i) {
-			History h=historyBook.get(i);
-			if ((tiListener==h.getiListener())&(tiSource==h.getiSource())&(tiPredicate==h.getiPredicate()))
-				pastTestimony.add(h);
-		}
-		// there will always be at least one entry in pastTestimony
-		double meanAffinity=perceivedAffinity[tiListener][tiSource][tiPredicate];
-		double sumWeight=1;
-		for (int i=0; (i<pastTestimony.size()); ++i) {
-			History h=pastTestimony.get(i);
-			double trust=(affinity[tiListener][h.getiSpeaker()]+1)/2; // make it unitary
-			if (h.getiSpeaker()==h.getiSource())
-				trust=bSum(trust,trust);
-			sumWeight+=trust;
-			double x=integerToBounded(pastTestimony.get(i).getiValue());
-			meanAffinity+=trust*x;
-		}
-		if (sumWeight>0) // in difficulty level 2, it is possible for sumWeight to be zero
-			meanAffinity/=sumWeight;
-		
-		// Calculate the deviations from all previous statements on the 
-		double dSuspect=0;
-		for (int i=0; (i<pastTestimony.size()); ++i) {
-			History h=pastTestimony.get(i);	
-			double deviation=Math.abs(meanAffinity-integerToBounded(h.getiValue()));
-			// apply gullibility
-			deviation*=1-gullible[tiListener];
-			dSuspect+=deviation;
-			double before=affinity[tiListener][h.getiSpeaker()];
-			affinity[tiListener][h.getiSpeaker()]=bSum(affinity[tiListener][h.getiSpeaker()],0.1-deviation);
-			if (fDebug) {
-				if (h.getiSpeaker()==0) {
-					System.out.println(tiListener+"  "+deviation+" "
-							+perceivedAffinity[tiListener][h.getiSource()][h.getiPredicate()]
-						+"  "+integerToBounded(h.getiValue())+" "+before+"  "
-							+affinity[tiListener][h.getiSpeaker()]);
-				}
-				suspectDamage+=affinity[tiListener][h.getiSpeaker()]-before;
-			}
-		}
-		iSuspect=(int)(10*dSuspect);
-		if (iSuspect>2) iSuspect=2;
-		perceivedAffinity[tiListener][tiSource][tiPredicate]=meanAffinity;
-	}
-// ************************************************************
-	private void calculatePopularity() {
-		for (int i=0; (i<cCharacters); ++i) {
-			popularity[i][iTurn]=0;;
-			for (int j=0; (j<cCharacters); ++j) {
-				if (j!=i)
-					popularity[i][iTurn]+=affinity[j][i]/(cCharacters-1);
-			}
-		}	
-		if (fDebug) {
-			double grandSum=0;
-			for (int i=0; (i<cCharacters); ++i) {
-				for (int j=0; (j<cCharacters); ++j) {
-					grandSum+=affinity[i][j]*affinity[i][j];
-				}
-			}
-			System.out.println("Grand Sum = "+grandSum+" flater: "+flatteryDamage+"  susp: "+suspectDamage);
-		}
-	}
 // ************************************************************
 	private void runNPCTurn() {
 		subPhase=4;
-		selectCallee();
-		selectPredicate();
-		if (callee==player) {
-			iPhase=npcCallsPlayer;
-			playSound("Ringtones/"+names[caller], false);
+		engine.planNPCCall();
+		if (engine.callee==engine.player) {
+			setPhase(npcCallsPlayer);
+			playSound("Ringtones/"+names[engine.caller], false);
 			npcCallsPlayerTimer.start();
 		}
 		else { // communicate affinity
 			subPhase=0;
 			playSound("psst", false);
 			secretNPCHangsUpTimer.start();
-			declareAffinity(boundedToInteger(planDirectReport(caller, callee)), caller, callee, predicate);
-			declareAffinity(boundedToInteger(planDirectReport(callee, caller)), callee, caller, predicate);
-			declareIndirectAffinity(boundedToInteger(planIndirectReport(caller,callee)),predicate, caller, callee, callee);
-			declareIndirectAffinity(boundedToInteger(planIndirectReport(callee,caller)), predicate, callee, caller, caller);
+			engine.runNPCConversation();
 		}
 	}			
-// ************************************************************
-	private double planDirectReport(int iSpeaker, int iListener) {
-		// Decides what iSpeaker will say to listener about predicate
-		
-		// These intermediate variables exist only for readability
-		double trueValue=affinity[iSpeaker][predicate];
-		double lieValue=perceivedAffinity[iSpeaker][iListener][predicate];
-		
-		// I'm more honest to my friends
-		double bias=bSum(dishonest[iSpeaker],-affinity[iSpeaker][iListener]);
-		
-		// now adjust for difficulty level
-		bias=bSum(bias,difficultyLevel/4);
-		
-		// Tell 'em what they want to hear
-		return blend(trueValue,lieValue,bias);
-	}
-// ************************************************************
-	private double planIndirectReport(int iSpeaker, int iListener) {
-		// Decides what iSpeaker will say to listener about predicate's feelings for listener
-		// Warning: this method is identical in form to the above,
-		//          but the array indeces are different!
-		
-		// These intermediate variables exist only for readability
-		double lieValue=affinity[iSpeaker][iListener];
-		double trueValue=perceivedAffinity[iSpeaker][predicate][iListener];
-		
-		// My dishonesty is to make it sound as if the predicate shares my feelings
-		// I'm more honest to my friends
-		double bias=bSum(dishonest[iSpeaker],-affinity[iSpeaker][iListener]);
-		
-		// now adjust for difficulty level
-		bias=bSum(bias,difficultyLevel/4);
-		
-		// Tell 'em what they want to hear
-		return blend(trueValue,lieValue,bias);
-	}
 // ************************************************************
 	private void nextPerson1() {
-		callee=nobody;
-		++caller;
-		if (caller==cCharacters) {
-			caller=player;
-			++iTurn;
-			calculatePopularity();
-			iPhase=playerSelectsCallee;
-			if (iTurn==maxTurns) { // end of game!
+		if (engine.nextCaller()) {
+			setPhase(playerSelectsCallee);
+			if (!engine.isGameOver())
+				saveGame();
+			else { // end of game!
 				iDisplay=endGameDisplay;
 				buttons[upArrow].setfVisible(false);
 				buttons[downArrow].setfVisible(false);
@@ -1987,95 +2175,67 @@ public class Gossip extends JFrame implements ImageObserver {
 			runNPCTurn();
 	}
 // ************************************************************
-	private void selectCallee() {
-		double bestFoM=0;
-		int bestCallee=nobody;
-		for (int i=0; (i<cCharacters); ++i) {
-			if (i!=caller) {
-				double age=Math.min(howRecent(caller,i,anybody),howRecent(i,caller,anybody))+rand.nextDouble();
-				double foM=age;//+2*affinity[caller][i];
-				if ((howRecent(caller,callee,i)<(historyBook.size()+1))&(foM>bestFoM)) {
-					bestFoM=foM;
-					bestCallee=i;
-				}
-			}
+	// Starts logging to the named replay log, if there is one; see ReplayLog.
+	private void logTo(String logName) {
+		if (logName==null)
+			return;
+		try {
+			engine.logTo(new ReplayLog(new File(logName)));
 		}
-		callee=bestCallee;
-		return;		
-	}
-// ************************************************************
-	private void selectPredicate() {
-		double oldestCall=0;
-		int oldestPredicate=nobody;
-		for (int i=0; (i<cCharacters); ++i) {
-			if ((i!=caller)&(i!=callee)) {
-				// the random term allows random selection of otherwise equal candidates
-				double age=Math.min(howRecent(caller,callee,i),howRecent(callee,caller,i))+rand.nextDouble();
-				if (age>oldestCall) {
-					oldestCall=age;
-					oldestPredicate=i;
-				}
-			}
+		catch (IOException e) {
+			System.err.println("Gossip: cannot write the replay log "+logName+": "+e);
 		}
-		predicate=oldestPredicate;
-		return;
 	}
 // ************************************************************
-	private double howRecent(int iSpeaker, int iListener, int iPredicate) {
-		boolean fSpeakerHit;
-		boolean fListenerHit;
-		boolean fPredicateHit;
-		boolean fTrifecta;
-		int i=historyBook.size();
-		do { 
-			--i;
-			History theEvent=historyBook.get(i);
-			fSpeakerHit=(iSpeaker==theEvent.iSpeaker);
-			fListenerHit=(iListener==theEvent.iListener);
-			fPredicateHit=(iPredicate==theEvent.iPredicate)|(iPredicate==anybody);
-			fTrifecta=fSpeakerHit&fListenerHit&fPredicateHit;
+	public static void main(String args[]) {
+		// "java Gossip.Gossip tournament ..." plays headless games instead; see GossipTournament
+		if ((args.length>0)&&(args[0].equals("tournament"))) {
+			GossipTournament.main(Arrays.copyOfRange(args,1,args.length));
+			return;
 		}
-		while ((i>0)&!fTrifecta);
-		return historyBook.size()-i;
-	}
-// ************************************************************
-	private double integerToBounded(int tInteger) {
-		double affinity=(2*(double)tInteger/cAffinityLevels)-1;
-		// snip off extreme values
-		if (affinity==-1) affinity=-0.98;
-		if (affinity==1) affinity=0.98;
-		return affinity;
-	}
-// ************************************************************
-	private int boundedToInteger(double tBounded) {
-	int statement= (int)(cAffinityLevels*(1+tBounded)/2);
-	return statement;
-}
-// ************************************************************	
-	private void printTurnStats() {
-		// for debugging purposes only
-		double aveDeviance=0;
-		double aveWeight=0;
-		double aveAffinity=0;
-		for (int i=0; (i<cCharacters); ++i) {
-			for (int j=0; (j<cCharacters); ++j) {
-				if (i!=j) {
-					aveAffinity+=affinity[i][j]/30;
-					for (int k=0; (k<cCharacters); ++k) {
-						if (k!=j) {
-							aveDeviance+=Math.pow((perceivedAffinity[i][j][k]-affinity[j][k]),2)/150;
-						}
-					}
-				}
-			}
+		// "train" and "coldStart" are for class-data sharing; see StartupProfile
+		if ((args.length>0)&&(args[0].equals("train"))) {
+			StartupProfile.train();
+			return;
+		}
+		if ((args.length>0)&&(args[0].equals("coldStart"))) {
+			StartupProfile.coldStart();
+			return;
+		}
+		// "java Gossip.Gossip replay <file>" plays a replay log back; see Replayer
+		if ((args.length>0)&&(args[0].equals("replay"))) {
+			Replayer.main(Arrays.copyOfRange(args,1,args.length));
+			return;
 		}
-		System.out.println("AveDeviance= "+aveDeviance+" aveWeight+ "+aveWeight+" aveAffinity= "+aveAffinity+" aff: "+affinity[3][0]);
-	}
-	
-// ************************************************************
-	public static void main(String args[]) {
 		Gossip theGame=new Gossip();
-		theGame.initialize();
+		// -Dgossip.replayLog=<file> appends everything that happens to that file; see ReplayLog
+		String logName=System.getProperty("gossip.replayLog");
+		// -Dgossip.saveFile=<file> saves the game there at the start of every turn
+		if (System.getProperty("gossip.saveFile")!=null)
+			theGame.saveFile=new File(System.getProperty("gossip.saveFile"));
+		// "java Gossip.Gossip active" draws on a render thread; see ActiveRenderer
+		if (Arrays.asList(args).contains("active"))
+			theGame.renderer=new ActiveRenderer(theGame, theGame.frame);
+		// "java Gossip.Gossip continue <file>" carries on with a saved game
+		// A replay log plays games back from the start, and a continued game's start is
+		// not in it, so a continued game is not logged.
+		int iContinue=Arrays.asList(args).indexOf("continue");
+		if ((iContinue>=0)&&(iContinue+1<args.length)) {
+			if (logName!=null)
+				System.err.println("Gossip: a continued game cannot be replayed, so it is not logged to "+logName);
+			try {
+				theGame.continueGame(new File(args[iContinue+1]));
+			}
+			catch (IOException e) {
+				System.err.println("Gossip: cannot carry on with "+args[iContinue+1]+": "+e.getMessage());
+				theGame.logTo(logName);
+				theGame.initialize();
+			}
+		}
+		else {
+			theGame.logTo(logName);
+			theGame.initialize();
+		}
 
 		try {
 			UIManager.setLookAndFeel(UIManager.getCrossPlatformLookAndFeelClassName());
@@ -2087,6 +2247,8 @@ public class Gossip extends JFrame implements ImageObserver {
 			}
 		}
 		while (!theGame.fQuit);
+		if (theGame.engine.log!=null)
+			theGame.engine.log.close();
 		System.exit(0);
 	}
 // ************************************************************
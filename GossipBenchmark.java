@@ -0,0 +1,596 @@
+package Gossip;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+/*
+ * A plain timing harness for the headless engine. There is nothing clever here:
+ * it warms the engine up, runs it for a while, and divides the elapsed time by
+ * the amount of work done.
+ *
+ *   java Gossip.GossipBenchmark castSize [N N N ...]
+ *       plays the first nine turns of fresh games with casts of each size N
+ *       and reports what a turn, a call and a single statement cost. A turn is
+ *       N calls and each call looks at every other character twice, so expect
+ *       roughly N-squared. Fresh games are used because the cost of a statement
+ *       also grows with how often the listener has heard the same thing before,
+ *       and that would otherwise swamp the effect of cast size.
+ *
+ *   java Gossip.GossipBenchmark quantization [N]
+ *       checks that 16- and 8-bit QuantizedPerceptions never return a value further
+ *       from what was stored than their documented error bound (and exits with
+ *       status 1 if they do), then plays the same game with a cast of N (default 50)
+ *       on exact and quantized perceptions and reports how far apart they end up
+ *       and what a turn costs with each.
+ *
+ *   java Gossip.GossipBenchmark allocation
+ *       warms up a game, then makes a few hundred thousand NPC statements and
+ *       uses the JVM's per-thread allocation counter to check that they allocated
+ *       nothing at all. Exits with status 1 if they did.
+ *
+ *   java Gossip.GossipBenchmark model [castSize=N,N,...] [history=N,N,...]
+ *       times the Bounded Number arithmetic, single statements at different history
+ *       lengths, calculatePopularity and the turn stats; see ModelBenchmark.
+ *
+ *   java Gossip.GossipBenchmark render [frames=N]
+ *       draws every display and phase off-screen, headless, and reports the time
+ *       and allocation per frame; see RenderBenchmark.
+ *
+ *   java Gossip.GossipBenchmark audio
+ *       plays each of the standard cast's sounds a few times through the SoundMixer
+ *       and reports how long they took to start. Needs an audio device and res/sounds.
+ *
+ *   java Gossip.GossipBenchmark snapshot [N N N ...]
+ *       for casts of each size N (default 6, 50 and 200), plays a game part way,
+ *       saves it with GameSnapshot, loads it into a new engine and checks that the
+ *       two are identical, then plays both on and checks that they stay identical.
+ *       Reports the file size and how long saving and loading took, and exits with
+ *       status 1 if anything differed.
+ *
+ *   java -cp gossip.jar Gossip.GossipBenchmark startup [runs=N] [archive=gossip.jsa]
+ *       starts the game N times (default 10) in a new JVM with "coldStart" (see
+ *       StartupProfile) and reports the time from JVM start to the game being ready:
+ *       without class-data sharing, with the JDK's own archive, and, if one is given,
+ *       with the game's AppCDS archive. The class path must be the jar the archive
+ *       was trained with. Run it where res/ is.
+ *
+ *   java Gossip.GossipBenchmark lookahead [games=N] [millis=N] [threads=N]
+ *       checks that GossipEngine.copy() plays on exactly as the original does, and so
+ *       does a copy that has been played on and made again with copyFrom(), then
+ *       plays N hard games of the standard six (default 40) in which one character
+ *       plans its calls with a LookaheadPlanner of the given budget (default 20 ms)
+ *       and threads (default one per processor), and the same games without it.
+ *       Reports how much more popular, and how much more often the winner, the
+ *       planning character ended up, how many rollouts each plan got done, and how
+ *       long plans took against the budget. Exits with status 1 if the copy was wrong.
+ *
+ *   java Gossip.GossipBenchmark rounds [threads=N] [N N N ...]
+ *       for casts of each size N (default 50 and 200), plays the same game one call
+ *       after another and with a RoundScheduler on one thread and on N threads
+ *       (default one per processor), checks after every turn that all three are
+ *       identical, and reports what a turn cost each way and how many levels of
+ *       conversations with nobody in common the turns came to. Exits with status 1
+ *       if the games ever differed.
+ *
+ * Every cast is the standard six plus made-up extras (see CastMember), with a
+ * fixed seed, so the numbers can be rerun.
+ */
+public class GossipBenchmark {
+	static final long seed=27;
+	static final long warmupNanos=500000000L;
+	static final long measureNanos=1000000000L;
+	static final int cTurnsPerGame=9;	// as long as the longest game on the screen
+// ************************************************************
+	public static void main(String args[]) throws IOException {
+		String mode="castSize";
+		if (args.length>0)
+			mode=args[0];
+		if (mode.equals("castSize")) {
+			int[] sizes={6, 12, 25, 50, 100, 200};
+			if (args.length>1) {
+				sizes=new int[args.length-1];
+				for (int i=1; (i<args.length); ++i)
+					sizes[i-1]=Integer.parseInt(args[i]);
+			}
+			castSizeBenchmark(sizes);
+		}
+		else if (mode.equals("quantization")) {
+			int cCast=50;
+			if (args.length>1)
+				cCast=Integer.parseInt(args[1]);
+			if (!quantizationBenchmark(cCast))
+				System.exit(1);
+		}
+		else if (mode.equals("allocation")) {
+			if (!allocationBenchmark())
+				System.exit(1);
+		}
+		else if (mode.equals("model")) {
+			ModelBenchmark.main(Arrays.copyOfRange(args,1,args.length));
+		}
+		else if (mode.equals("render")) {
+			RenderBenchmark.main(Arrays.copyOfRange(args,1,args.length));
+		}
+		else if (mode.equals("audio")) {
+			if (!audioBenchmark())
+				System.exit(1);
+		}
+		else if (mode.equals("snapshot")) {
+			int[] sizes={6, 50, 200};
+			if (args.length>1) {
+				sizes=new int[args.length-1];
+				for (int i=1; (i<args.length); ++i)
+					sizes[i-1]=Integer.parseInt(args[i]);
+			}
+			if (!snapshotBenchmark(sizes))
+				System.exit(1);
+		}
+		else if (mode.equals("startup")) {
+			int cRuns=10;
+			String archive=null;
+			for (int i=1; (i<args.length); ++i) {
+				String[] option=args[i].split("=",2);
+				if ((option.length==2)&&option[0].equals("runs"))
+					cRuns=Integer.parseInt(option[1]);
+				else if ((option.length==2)&&option[0].equals("archive"))
+					archive=option[1];
+				else {
+					System.err.println("usage: java Gossip.GossipBenchmark startup [runs=N] [archive=file]");
+					System.exit(1);
+				}
+			}
+			if (!startupBenchmark(cRuns, archive))
+				System.exit(1);
+		}
+		else if (mode.equals("rounds")) {
+			int cThreads=Runtime.getRuntime().availableProcessors();
+			ArrayList<Integer> sizes=new ArrayList<Integer>();
+			for (int i=1; (i<args.length); ++i) {
+				if (args[i].startsWith("threads="))
+					cThreads=Integer.parseInt(args[i].substring("threads=".length()));
+				else
+					sizes.add(Integer.parseInt(args[i]));
+			}
+			if (sizes.isEmpty())
+				sizes.addAll(Arrays.asList(50, 200));
+			if (!roundsBenchmark(sizes, cThreads))
+				System.exit(1);
+		}
+		else if (mode.equals("lookahead")) {
+			int cGames=40;
+			long millis=20;
+			int cThreads=Runtime.getRuntime().availableProcessors();
+			for (int i=1; (i<args.length); ++i) {
+				String[] option=args[i].split("=",2);
+				if ((option.length==2)&&option[0].equals("games"))
+					cGames=Integer.parseInt(option[1]);
+				else if ((option.length==2)&&option[0].equals("millis"))
+					millis=Long.parseLong(option[1]);
+				else if ((option.length==2)&&option[0].equals("threads"))
+					cThreads=Integer.parseInt(option[1]);
+				else {
+					System.err.println("usage: java Gossip.GossipBenchmark lookahead [games=N] [millis=N] [threads=N]");
+					System.exit(1);
+				}
+			}
+			if (!lookaheadBenchmark(cGames, millis, cThreads))
+				System.exit(1);
+		}
+		else {
+			System.err.println("unknown benchmark: "+mode);
+			System.exit(1);
+		}
+	}
+// ************************************************************
+	static GossipEngine newEngine(int cCast, int difficultyLevel) {
+		return newEngine(cCast, difficultyLevel, new HeapPerceptions(cCast));
+	}
+// ************************************************************
+	static GossipEngine newEngine(int cCast, int difficultyLevel, Perceptions perceptions) {
+		GossipEngine engine=new GossipEngine(seed, CastMember.extendedCast(cCast, seed), perceptions);
+		engine.newGame();
+		engine.cCharacters=cCast;
+		engine.difficultyLevel=difficultyLevel;
+		engine.startGame();
+		return engine;
+	}
+// ************************************************************
+	static void castSizeBenchmark(int[] sizes) {
+		System.out.println("cast      ns/turn      ns/call  ns/statement  (ns/turn)/N^2");
+		for (int n=0; (n<sizes.length); ++n) {
+			int cCast=sizes[n];
+			playGames(cCast, warmupNanos);
+			long[] result=playGames(cCast, measureNanos);
+			long elapsed=result[0];
+			long cTurns=result[1];
+			long cStatements=result[2];
+
+			double perTurn=(double)elapsed/cTurns;
+			System.out.println(String.format("%4d %12.0f %12.0f %13.1f %14.2f",
+					cCast, perTurn, perTurn/cCast, (double)elapsed/cStatements,
+					perTurn/((double)cCast*cCast)));
+		}
+	}
+// ************************************************************
+	// Plays fresh games until the time runs out. Setting up each game is not timed.
+	// Returns the time spent playing, the number of turns and the number of statements.
+	static long[] playGames(int cCast, long budgetNanos) {
+		long elapsed=0;
+		long cTurns=0;
+		long cStatements=0;
+		while (elapsed<budgetNanos) {
+			GossipEngine engine=newEngine(cCast, 1);
+			long start=System.nanoTime();
+			for (int i=0; (i<cTurnsPerGame); ++i)
+				engine.stepTurn();
+			elapsed+=System.nanoTime()-start;
+			cTurns+=cTurnsPerGame;
+			cStatements+=engine.historyBook.size();
+		}
+		long[] result={elapsed, cTurns, cStatements};
+		return result;
+	}
+// ************************************************************
+	static boolean quantizationBenchmark(int cCast) throws IOException {
+		boolean fPassed=true;
+		int[] bits={16, 8};
+
+		System.out.println("round trip of 10,000,000 values in [-1, 1]");
+		System.out.println("bits     max error     documented bound");
+		Random rand=new Random(seed);
+		for (int b=0; (b<bits.length); ++b) {
+			int cSmall=8;
+			Perceptions store=new QuantizedPerceptions(cSmall, bits[b], null);
+			double maxError=0;
+			for (int n=0; (n<10000000); ++n) {
+				double value;
+				switch (n) {
+					case 0: { value=-1; break; }
+					case 1: { value=1; break; }
+					case 2: { value=0; break; }
+					default: { value=2*rand.nextDouble()-1; break; }
+				}
+				int i=rand.nextInt(cSmall), j=rand.nextInt(cSmall), k=rand.nextInt(cSmall);
+				store.set(i, j, k, value);
+				maxError=Math.max(maxError, Math.abs(store.get(i, j, k)-value));
+			}
+			boolean fOK=(maxError<=store.errorBound());
+			fPassed&=fOK;
+			System.out.println(String.format("%4d  %12.3e  %12.3e  %s", bits[b], maxError, store.errorBound(), fOK ? "ok" : "EXCEEDED"));
+		}
+
+		System.out.println();
+		System.out.println("cast of "+cCast+", "+cTurnsPerGame+" turns, compared with exact perceptions");
+		System.out.println("bits  max |perception diff|  max |affinity diff|  statements differing      ns/turn   bytes");
+		// one throwaway game with each kind of storage, so that the timings are not all JIT
+		playTurns(newEngine(cCast, 1));
+		for (int b=0; (b<bits.length); ++b)
+			playTurns(newEngine(cCast, 1, new QuantizedPerceptions(cCast, bits[b], null)));
+
+		GossipEngine exact=newEngine(cCast, 1);
+		long exactTime=playTurns(exact);
+		System.out.println(String.format("  64  %21.3e  %19.3e  %20s  %11d  %d", 0.0, 0.0, "-",
+				exactTime/cTurnsPerGame, (long)cCast*cCast*cCast*8));
+		for (int b=0; (b<bits.length); ++b) {
+			GossipEngine quantized=newEngine(cCast, 1, new QuantizedPerceptions(cCast, bits[b], null));
+			long quantizedTime=playTurns(quantized);
+			double maxPerceptionDiff=0;
+			double maxAffinityDiff=0;
+			for (int i=0; (i<cCast); ++i) {
+				for (int j=0; (j<cCast); ++j) {
+					maxAffinityDiff=Math.max(maxAffinityDiff, Math.abs(exact.affinity[i*cCast+j]-quantized.affinity[i*cCast+j]));
+					for (int k=0; (k<cCast); ++k)
+						maxPerceptionDiff=Math.max(maxPerceptionDiff,
+								Math.abs(exact.perceivedAffinity.get(i,j,k)-quantized.perceivedAffinity.get(i,j,k)));
+				}
+			}
+			int cStatements=Math.min(exact.historyBook.size(), quantized.historyBook.size());
+			int cDiffering=0;
+			for (int i=0; (i<cStatements); ++i) {
+				if (exact.historyBook.get(i)!=quantized.historyBook.get(i))
+					++cDiffering;
+			}
+			System.out.println(String.format("%4d  %21.3e  %19.3e  %9d of %7d  %11d  %d", bits[b],
+					maxPerceptionDiff, maxAffinityDiff, cDiffering, cStatements,
+					quantizedTime/cTurnsPerGame, (long)cCast*cCast*cCast*bits[b]/8));
+		}
+		return fPassed;
+	}
+// ************************************************************
+	static boolean allocationBenchmark() {
+		com.sun.management.ThreadMXBean threads=(com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+		long iThread=Thread.currentThread().getId();
+		int cCalls=20000;
+
+		// Play long enough for the JIT to finish and for the hash tables to have seen
+		// every key they are ever going to see, then make room for what comes next.
+		GossipEngine engine=newEngine(GossipEngine.maxCharacters, 1);
+		for (int i=0; (i<500); ++i)
+			engine.stepTurn();
+		engine.reserveHistory(4*cCalls);
+
+		// the cost of asking, so that it can be subtracted
+		long before=threads.getThreadAllocatedBytes(iThread);
+		long overhead=threads.getThreadAllocatedBytes(iThread)-before;
+
+		int cHistoryBefore=engine.historyBook.size();
+		before=threads.getThreadAllocatedBytes(iThread);
+		for (int i=0; (i<cCalls); ++i) {
+			// Each call is planned and made exactly as in stepCall, but the phone is passed
+			// along here rather than by nextCaller, because finishing a turn records the
+			// popularity and that series grows now and then.
+			engine.planNPCCall();
+			engine.runNPCConversation();
+			engine.callee=GossipEngine.nobody;
+			engine.caller=(engine.caller+1)%engine.cCharacters;
+		}
+		long allocated=threads.getThreadAllocatedBytes(iThread)-before-overhead;
+		int cStatements=engine.historyBook.size()-cHistoryBefore;
+
+		System.out.println(cStatements+" statements allocated "+allocated+" bytes ("
+				+String.format("%.3f", (double)allocated/cStatements)+" bytes per statement)");
+		return allocated==0;
+	}
+// ************************************************************
+	static boolean audioBenchmark() {
+		SoundMixer sounds=new SoundMixer(new File(System.getProperty("user.dir")+"/res/sounds"));
+		if (!sounds.hasOutput())
+			return false;
+		CastMember[] cast=CastMember.standardCast();
+		ArrayList<String> names=new ArrayList<String>();
+		names.add("psst");
+		for (int i=0; (i<cast.length); ++i) {
+			names.add("Ringtones/"+cast[i].name);
+			names.add("Hello/"+cast[i].name);
+			names.add("Goodbye/"+cast[i].name);
+		}
+		for (int i=0; (i<names.size()); ++i)
+			sounds.preload(names.get(i));
+		// some of these overlap, as they would in the game
+		for (int n=0; (n<3); ++n) {
+			for (int i=0; (i<names.size()); ++i) {
+				sounds.play(names.get(i), false);
+				try { Thread.sleep(150); } catch (InterruptedException e) { }
+			}
+		}
+		System.out.println(sounds.latencyReport());
+		return true;
+	}
+// ************************************************************
+	static boolean snapshotBenchmark(int[] sizes) throws IOException {
+		boolean fPassed=true;
+		File file=File.createTempFile("gossip", ".snapshot");
+		file.deleteOnExit();
+		System.out.println("cast   statements         bytes    save ms    load ms  load MB/s  identical  resumed");
+		for (int n=0; (n<sizes.length); ++n) {
+			int cCast=sizes[n];
+			GossipEngine original=newEngine(cCast, 1);
+			playTurns(original);
+			// the first save and load of each size are thrown away, so that the timings are not all JIT
+			GameSnapshot.save(original, 0, file);
+			GameSnapshot.load(file);
+
+			long start=System.nanoTime();
+			GameSnapshot.save(original, 0, file);
+			long saveTime=System.nanoTime()-start;
+			start=System.nanoTime();
+			GossipEngine loaded=GameSnapshot.load(file);
+			long loadTime=System.nanoTime()-start;
+
+			boolean fIdentical=isSameGame(original, loaded);
+			original.stepTurn();
+			loaded.stepTurn();
+			boolean fResumed=isSameGame(original, loaded);
+			fPassed&=fIdentical&&fResumed;
+			System.out.println(String.format("%4d %12d %13d %10.2f %10.2f %10.0f  %9s  %7s", cCast,
+					original.historyBook.size(), file.length(), saveTime/1e6, loadTime/1e6,
+					file.length()/1e6/(loadTime/1e9), fIdentical ? "yes" : "NO", fResumed ? "yes" : "NO"));
+		}
+		file.delete();
+		return fPassed;
+	}
+// ------------------------------------------------------------
+	// whether every number in the two engines is exactly the same
+	static boolean isSameGame(GossipEngine a, GossipEngine b) {
+		if ((a.cCast!=b.cCast)||(a.cCharacters!=b.cCharacters)||(a.iTurn!=b.iTurn)||(a.maxTurns!=b.maxTurns)
+				||(a.caller!=b.caller)||(a.callee!=b.callee)||(a.predicate!=b.predicate)
+				||(a.rand.state()!=b.rand.state())||(a.historyBook.size()!=b.historyBook.size())
+				||!Arrays.equals(a.affinity,b.affinity)||!Arrays.equals(a.columnSums,b.columnSums)
+				||(a.popularity.turns()!=b.popularity.turns()))
+			return false;
+		for (int i=0; (i<a.historyBook.size()); ++i) {
+			if (a.historyBook.get(i)!=b.historyBook.get(i))
+				return false;
+		}
+		for (int i=0; (i<a.cCast); ++i) {
+			if ((a.dishonest[i]!=b.dishonest[i])||(a.gullible[i]!=b.gullible[i])||(a.vain[i]!=b.vain[i])
+					||!a.cast[i].name.equals(b.cast[i].name)||(a.cast[i].fMale!=b.cast[i].fMale))
+				return false;
+			for (int t=0; (t<a.popularity.turns()); ++t) {
+				if (Double.doubleToLongBits(a.popularity.get(i,t))!=Double.doubleToLongBits(b.popularity.get(i,t)))
+					return false;
+			}
+			for (int j=0; (j<a.cCast); ++j) {
+				for (int k=0; (k<a.cCast); ++k) {
+					if (Double.doubleToLongBits(a.perceivedAffinity.get(i,j,k))!=Double.doubleToLongBits(b.perceivedAffinity.get(i,j,k)))
+						return false;
+				}
+			}
+		}
+		return true;
+	}
+// ************************************************************
+	static boolean startupBenchmark(int cRuns, String archive) throws IOException {
+		String[][] configurations={ { "no class-data sharing", "-Xshare:off" },
+				{ "JDK archive only", "-Xshare:auto" },
+				{ "AppCDS archive", "-XX:SharedArchiveFile="+archive } };
+		int cConfigurations=(archive==null) ? 2 : 3;
+		if ((archive!=null)&&!new File(archive).isFile()) {
+			System.err.println("no archive "+archive+"; make one with gossip.sh or see StartupProfile");
+			return false;
+		}
+		System.out.println("cold start, ms from JVM start  runs  median     min     max");
+		for (int c=0; (c<cConfigurations); ++c) {
+			double[] times=new double[cRuns];
+			for (int i=0; (i<cRuns); ++i) {
+				times[i]=coldStart(configurations[c][1]);
+				if (times[i]<0)
+					return false;
+			}
+			Arrays.sort(times);
+			System.out.println(String.format("%-30s %5d %7.1f %7.1f %7.1f", configurations[c][0], cRuns,
+					times[cRuns/2], times[0], times[cRuns-1]));
+		}
+		return true;
+	}
+// ------------------------------------------------------------
+	// Starts a new JVM with the given option and returns the cold start it reports,
+	// or -1, having shown what it said instead, if it reports none.
+	static double coldStart(String option) throws IOException {
+		String java=System.getProperty("java.home")+File.separator+"bin"+File.separator+"java";
+		ProcessBuilder builder=new ProcessBuilder(java, option, "-cp", System.getProperty("java.class.path"),
+				"Gossip.Gossip", "coldStart");
+		builder.redirectErrorStream(true);
+		Process process=builder.start();
+		BufferedReader output=new BufferedReader(new InputStreamReader(process.getInputStream()));
+		StringBuilder said=new StringBuilder();
+		double time=-1;
+		String line;
+		while ((line=output.readLine())!=null) {
+			if (line.startsWith("cold start "))
+				time=Double.parseDouble(line.substring("cold start ".length()).replace(" ms",""));
+			else
+				said.append(line).append('\n');
+		}
+		try { process.waitFor(); } catch (InterruptedException e) { }
+		if (time<0)
+			System.err.print("no cold start time from "+option+":\n"+said);
+		return time;
+	}
+// ************************************************************
+	static boolean roundsBenchmark(ArrayList<Integer> sizes, int cThreads) {
+		boolean fPassed=true;
+		RoundScheduler[] schedulers={ null, new RoundScheduler(1), new RoundScheduler(cThreads) };
+		System.out.println("cast   ms/turn one call at a time   1 thread  "+cThreads+" threads   levels/turn  calls/level  identical");
+		for (int n=0; (n<sizes.size()); ++n) {
+			int cCast=sizes.get(n);
+			GossipEngine[] engines=new GossipEngine[schedulers.length];
+			long[] times=new long[schedulers.length];
+			for (int s=0; (s<schedulers.length); ++s) {
+				engines[s]=newEngine(cCast, 1);
+				engines[s].scheduler=schedulers[s];
+			}
+			int cLevels=0;
+			boolean fIdentical=true;
+			// the first turn of each is thrown away, so that the timings are not all JIT
+			for (int t=0; (t<=cTurnsPerGame); ++t) {
+				for (int s=0; (s<schedulers.length); ++s) {
+					long start=System.nanoTime();
+					engines[s].stepTurn();
+					if (t>0)
+						times[s]+=System.nanoTime()-start;
+				}
+				if (t>0)
+					cLevels+=schedulers[2].cLevels;
+				fIdentical&=isSameGame(engines[0], engines[1])&&isSameGame(engines[0], engines[2]);
+			}
+			fPassed&=fIdentical;
+			System.out.println(String.format("%4d %26.2f %10.2f %10.2f %13.1f %12.1f  %9s", cCast,
+					times[0]/1e6/cTurnsPerGame, times[1]/1e6/cTurnsPerGame, times[2]/1e6/cTurnsPerGame,
+					(double)cLevels/cTurnsPerGame, (double)cCast*cTurnsPerGame/cLevels, fIdentical ? "yes" : "NO"));
+		}
+		schedulers[1].close();
+		schedulers[2].close();
+		return fPassed;
+	}
+// ************************************************************
+	static boolean lookaheadBenchmark(int cGames, long millis, int cThreads) {
+		// a copy given the original's random numbers must play on exactly as the original
+		GossipEngine original=newEngine(GossipEngine.maxCharacters, 2);
+		original.stepTurn();
+		GossipEngine copy=original.copy(0);
+		copy.rand.setState(original.rand.state());
+		boolean fCopied=isSameGame(original, copy);
+		original.stepTurn();
+		copy.stepTurn();
+		fCopied&=isSameGame(original, copy);
+		copy.stepTurn();	// so that copyFrom() has something to undo
+		copy.copyFrom(original, 0);
+		copy.rand.setState(original.rand.state());
+		fCopied&=isSameGame(original, copy);
+		original.stepTurn();
+		copy.stepTurn();
+		fCopied&=isSameGame(original, copy);
+		System.out.println("copy plays on as the original: "+(fCopied ? "yes" : "NO"));
+
+		LookaheadPlanner planner=new LookaheadPlanner(millis*1000000, cThreads);
+		System.out.println("lookahead of "+millis+" ms on "+planner.cThreads+" threads, "+cGames+" hard games of "
+				+GossipEngine.maxCharacters);
+		double plainSum=0, plannedSum=0;
+		int cPlainWins=0, cPlannedWins=0;
+		ArrayList<Long> planTimes=new ArrayList<Long>();
+		long cRollouts=0;
+		for (int g=0; (g<cGames); ++g) {
+			int iPlanner=g%GossipEngine.maxCharacters;
+			for (int p=0; (p<2); ++p) {
+				GossipEngine engine=new GossipEngine(seed+g);
+				engine.newGame();
+				engine.cCharacters=GossipEngine.maxCharacters;
+				engine.difficultyLevel=2;
+				engine.startGame();
+				if (p==1) {
+					planner.iOnly=iPlanner;
+					engine.planner=planner;
+				}
+				while (!engine.isGameOver()) {
+					boolean fPlanning=(p==1)&&(engine.caller==iPlanner);
+					engine.stepCall();
+					if (fPlanning) {
+						planTimes.add(planner.lastNanos);
+						cRollouts+=planner.lastRollouts;
+					}
+				}
+				double popularity=engine.popularity.get(iPlanner, engine.iTurn);
+				boolean fWon=true;
+				for (int i=0; (i<engine.cCharacters); ++i)
+					fWon&=(i==iPlanner)||(engine.popularity.get(i, engine.iTurn)<popularity);
+				if (p==0) {
+					plainSum+=popularity;
+					cPlainWins+=fWon ? 1 : 0;
+				}
+				else {
+					plannedSum+=popularity;
+					cPlannedWins+=fWon ? 1 : 0;
+				}
+			}
+		}
+		planner.close();
+		long[] times=new long[planTimes.size()];
+		for (int i=0; (i<times.length); ++i)
+			times[i]=planTimes.get(i);
+		Arrays.sort(times);
+		System.out.println("                   popularity   won");
+		System.out.println(String.format("without lookahead  %10.4f  %3d%%", plainSum/cGames, 100*cPlainWins/cGames));
+		System.out.println(String.format("with lookahead     %10.4f  %3d%%", plannedSum/cGames, 100*cPlannedWins/cGames));
+		if (times.length>0) {
+			System.out.println(String.format("%d plans, %.0f rollouts each; plan ms median %.2f, max %.2f", times.length,
+					(double)cRollouts/times.length, times[times.length/2]/1e6, times[times.length-1]/1e6));
+		}
+		return fCopied;
+	}
+// ************************************************************
+	// plays the usual number of turns and returns how long it took
+	static long playTurns(GossipEngine engine) {
+		long start=System.nanoTime();
+		for (int i=0; (i<cTurnsPerGame); ++i)
+			engine.stepTurn();
+		return System.nanoTime()-start;
+	}
+// ************************************************************
+}
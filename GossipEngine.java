@@ -0,0 +1,722 @@
+package Gossip;
+
+import java.nio.LongBuffer;
+import java.util.Arrays;
+
+/*
+ * This is the social model of the game, pulled out of the Gossip frame so that
+ * it can be run without any windows, images, sounds or timers. Everything in here
+ * is number-crunching; the frame is now just one client of it, and a headless
+ * simulation is another.
+ *
+ * The conventions are the same as in Gossip.java: affinities are Bounded Numbers
+ * in the range (-1, 1); statements are made as integer affinity levels 0-8.
+ *
+ * A "call" is a single conversation: the caller picks a callee and a predicate,
+ * and the two of them exchange four statements (two direct, two indirect).
+ * A "turn" is a complete round in which every character gets to make one call.
+ *
+ * When the engine is driven by the frame, character 0 is the player and the frame
+ * handles the player's side of every conversation. When player==nobody, every
+ * character is an NPC and the whole game can be stepped with stepCall() or stepTurn().
+ */
+public class GossipEngine {
+	static final int maxCharacters=6;	// number of characters in the standard cast, which is all the screen can show
+	static final int cAffinityLevels=9; // number of permitted expressions
+	static final int nobody=-1;
+	static final int anybody=-1;
+
+	int maxTurns;		// how long the game will be
+	int iTurn;			// how many turns have we played so far?
+	int player;			// which character is the player; nobody for a headless simulation
+	int cCharacters;	// the number of characters playing in this particular game
+	int cCast;			// the number of characters available; all the arrays are sized to this
+	CastMember[] cast;	// names, genders and traits
+	int difficultyLevel;	// 0, 1 or 2
+
+	// who's who in the current conversation; see the notes in Gossip.java
+	int caller, callee, predicate;
+
+	// these two values are used to communicate feedback to the player
+	int iSuspect; // how much the speaker's statement disagrees with what I've previously heard
+	int iLikeWhatIHear;	// how agreeable I find the speaker's statement
+
+	// how much the first character likes the second character. Bounded Number
+	// Flat and row-major: what i feels for j is affinity[i*cCast+j].
+	// Only ever changed through setAffinity(), which keeps columnSums up to date.
+	double[] affinity;
+
+	// perceived affinity of second for third as perceived by first. Bounded Number
+	// Exact doubles on the heap unless the engine was given some other storage.
+	Perceptions perceivedAffinity;
+
+	// average of the affinities towards the character, at the end of each turn
+	PopularitySeries popularity;
+	// what the other characters in the game feel for each character, added up;
+	// kept up to date with every change to affinity, so popularity is always at hand
+	final double[] columnSums;
+
+	// personality traits, copied out of the cast for quick access
+	double[] dishonest;
+	double[] gullible;
+	double[] vain;
+
+	// every statement ever made, each packed into a long
+	HistoryBook historyBook=new HistoryBook();
+	// where to find past statements by (listener, source, predicate)
+	TestimonyIndex testimony=new TestimonyIndex();
+	// where each speaker last said something to each listener, for howRecent
+	RecencyTable recency=new RecencyTable();
+
+	GossipRandom rand;
+
+	// if not null, everything that happens to this engine is written here; see logTo()
+	ReplayLog log;
+
+	// If not null, NPCs plan their calls by looking ahead with this instead of going
+	// by recency, and decide what they will say in the same breath. The plan for the
+	// call in progress is kept here until nextCaller().
+	LookaheadPlanner planner;
+	boolean fPlanned;
+	int plannedDirect, plannedIndirect;
+
+	// if not null, stepTurn() plays whole turns with this; see RoundScheduler
+	RoundScheduler scheduler;
+
+	// prints debugging values
+	boolean fDebug;
+	// these values are used only when debug=true;
+	double flatteryDamage=0;
+	double suspectDamage=0;
+	// what this engine has counted this turn for GossipMetrics; null when there are no metrics
+	GossipMetrics.Tally tally;
+// ************************************************************
+	public GossipEngine(GossipRandom tRand, int tPlayer, CastMember[] tCast, Perceptions tPerceptions) {
+		rand=tRand;
+		player=tPlayer;
+		caller=0;
+		callee=nobody;
+
+		cast=tCast;
+		cCast=cast.length;
+		if (cCast>HistoryBook.maxCast)
+			throw new IllegalArgumentException("a cast of "+cCast+" is more than the history book can record");
+		affinity=new double[cCast*cCast];
+		perceivedAffinity=tPerceptions;
+		popularity=new PopularitySeries(cCast);
+		columnSums=new double[cCast];
+		if (GossipMetrics.metrics!=null)
+			tally=new GossipMetrics.Tally();
+		dishonest=new double[cCast];
+		gullible=new double[cCast];
+		vain=new double[cCast];
+		for (int i=0; (i<cCast); ++i) {
+			dishonest[i]=cast[i].dishonest;
+			gullible[i]=cast[i].gullible;
+			vain[i]=cast[i].vain;
+		}
+	}
+// ************************************************************
+	public GossipEngine(GossipRandom tRand, int tPlayer) {
+		this(tRand, tPlayer, CastMember.standardCast(), new HeapPerceptions(maxCharacters));
+	}
+// ************************************************************
+	// a headless engine: nobody is the player, everybody is an NPC
+	public GossipEngine(long seed, CastMember[] tCast, Perceptions tPerceptions) {
+		this(new GossipRandom(seed), nobody, tCast, tPerceptions);
+	}
+// ************************************************************
+	public GossipEngine(long seed, CastMember[] tCast) {
+		this(seed, tCast, new HeapPerceptions(tCast.length));
+	}
+// ************************************************************
+	public GossipEngine(long seed) {
+		this(seed, CastMember.standardCast());
+	}
+// ************************************************************
+	// From now on, writes everything that happens to the log, starting with the cast.
+	// Start logging before newGame() if the log is to be replayed.
+	void logTo(ReplayLog tLog) {
+		log=tLog;
+		log.header(player, cast);
+	}
+// ************************************************************
+	// this is executed every time the game is restarted.
+	public void newGame() {
+		if (log!=null)
+			log.newGame(rand.state());
+		iTurn=0;
+		maxTurns=3;
+		cCharacters=4;
+		caller=0; // the first call of every round goes to character 0, who is the player if there is one
+		callee=nobody;
+
+		// these values must be reset at the beginning of a game
+		for (int i=0; (i<cCast); ++i) {
+			// initialize all affinities BEFORE initializing perceived affinities
+			int j=i+1;
+			while (j<cCast) {
+				setAffinity(i, j, 2*rand.nextDouble()-1);
+				// make affinities semi-symmetric
+				setAffinity(j, i, bSum(affinity[i*cCast+j],(2*rand.nextDouble()-1)/4));
+				++j;
+			}
+		}
+		sumColumns();
+	}
+// ************************************************************
+	// this is executed once cCharacters and difficultyLevel have been chosen
+	public void startGame() {
+		if (log!=null)
+			log.startGame(cCharacters, difficultyLevel, rand.state());
+		maxTurns=3*(cCharacters-3);
+		sumColumns();	// cCharacters may have changed since newGame()
+		// initialize perceptions based on difficulty level
+		for (int i=0; (i<cCharacters); ++i) {
+			for (int j=0; (j<cCharacters); ++j) {
+				for (int k=0; (k<cCharacters); ++k) {
+					if (i==j) {
+						perceivedAffinity.set(i,j,k,affinity[i*cCast+k]);
+					}
+					else {
+						double deviance=rand.nextDouble()-0.5;
+						double wrongValue=bSum(affinity[j*cCast+k],deviance);
+						perceivedAffinity.set(i,j,k,blend(affinity[j*cCast+k],wrongValue,difficultyLevel-1));
+					}
+				}
+			}
+		}
+		calculatePopularity();
+	}
+// ************************************************************
+	public boolean isGameOver() {
+		return iTurn==maxTurns;
+	}
+// ************************************************************
+	// picks the callee and predicate for the NPC whose turn it is
+	public void planNPCCall() {
+		if ((planner!=null)&&planner.plansFor(caller)) {
+			LookaheadPlanner.Move move=planner.plan(this);
+			if (move!=null) {
+				callee=move.callee;
+				predicate=move.predicate;
+				plannedDirect=move.direct;
+				plannedIndirect=move.indirect;
+				fPlanned=true;
+				if (log!=null)
+					log.lookahead(caller, callee, predicate);
+				return;
+			}
+		}
+		int calleeBefore=callee;
+		selectCallee();
+		selectPredicate();
+		if (log!=null)
+			log.plan(caller, calleeBefore, callee, predicate);
+	}
+// ************************************************************
+	// the player, being the caller, has picked whom to call
+	public void playerCalls(int tCallee) {
+		callee=tCallee;
+		if (log!=null)
+			log.calleeChosen(callee);
+	}
+// ************************************************************
+	// the player, on the phone, has picked whom to talk about
+	public void playerChoosesPredicate(int tPredicate) {
+		predicate=tPredicate;
+		if (log!=null)
+			log.predicateChosen(predicate);
+	}
+// ************************************************************
+	// the four statements of a conversation between two NPCs
+	public void runNPCConversation() {
+		if (fPlanned) {
+			runPlannedConversation(plannedDirect, plannedIndirect);
+			return;
+		}
+		declareAffinity(boundedToInteger(planDirectReport(caller, callee)), caller, callee, predicate);
+		declareAffinity(boundedToInteger(planDirectReport(callee, caller)), callee, caller, predicate);
+		declareIndirectAffinity(boundedToInteger(planIndirectReport(caller,callee)),predicate, caller, callee, callee);
+		declareIndirectAffinity(boundedToInteger(planIndirectReport(callee,caller)), predicate, callee, caller, caller);
+	}
+// ************************************************************
+	// The same four statements, but with what the caller says decided beforehand.
+	// The callee answers as usual; if the callee is the player, as the frame would
+	// suggest, which is to say truthfully.
+	void runPlannedConversation(int iDirect, int iIndirect) {
+		declareAffinity(iDirect, caller, callee, predicate);
+		if (callee==player)
+			declareAffinity(getPAffinityIndex(player,player,predicate), callee, caller, predicate);
+		else
+			declareAffinity(boundedToInteger(planDirectReport(callee, caller)), callee, caller, predicate);
+		declareIndirectAffinity(iIndirect, predicate, caller, callee, callee);
+		if (callee==player)
+			declareIndirectAffinity(getPAffinityIndex(player,predicate,caller), predicate, callee, caller, caller);
+		else
+			declareIndirectAffinity(boundedToInteger(planIndirectReport(callee,caller)), predicate, callee, caller, caller);
+	}
+// ************************************************************
+	// What an NPC who has called the player says, directly and then indirectly:
+	// what was planned, if there was a plan, and otherwise the plain truth as the
+	// NPC sees it, which is what NPCs have always told the player.
+	public int callerDirectStatement() {
+		return fPlanned ? plannedDirect : getAffinityIndex(caller,predicate);
+	}
+	// ------------------------------------------------------------
+	public int callerIndirectStatement() {
+		return fPlanned ? plannedIndirect : getPAffinityIndex(caller,predicate,player);
+	}
+// ************************************************************
+	// A deep copy that can be played on without touching this engine; the planner
+	// looks ahead with these. It logs nothing, plans nothing, counts nothing for
+	// GossipMetrics and has its own random numbers, seeded with seed.
+	GossipEngine copy(long seed) {
+		GossipEngine copy=new GossipEngine(new GossipRandom(seed), player, cast, perceivedAffinity.copy());
+		copy.copyStateFrom(this);
+		return copy;
+	}
+// ------------------------------------------------------------
+	// Makes this engine a copy of from, which has the same cast, as copy(seed) would,
+	// but in the arrays this engine already has, so that an engine made with copy()
+	// can be used again and again without allocating anything once it has grown to
+	// from's size. Of the history book and its indexes only what is in use is copied.
+	void copyFrom(GossipEngine from, long seed) {
+		rand.setSeed(seed);
+		perceivedAffinity.copyFrom(from.perceivedAffinity);
+		copyStateFrom(from);
+	}
+	// ------------------------------------------------------------
+	// everything but the random numbers and perceivedAffinity
+	private void copyStateFrom(GossipEngine from) {
+		maxTurns=from.maxTurns;
+		iTurn=from.iTurn;
+		cCharacters=from.cCharacters;
+		difficultyLevel=from.difficultyLevel;
+		caller=from.caller;
+		callee=from.callee;
+		predicate=from.predicate;
+		iSuspect=from.iSuspect;
+		iLikeWhatIHear=from.iLikeWhatIHear;
+		fPlanned=false;
+		System.arraycopy(from.affinity, 0, affinity, 0, cCast*cCast);
+		System.arraycopy(from.columnSums, 0, columnSums, 0, cCast);
+		popularity.copyFrom(from.popularity);
+		System.arraycopy(from.dishonest, 0, dishonest, 0, cCast);
+		System.arraycopy(from.gullible, 0, gullible, 0, cCast);
+		System.arraycopy(from.vain, 0, vain, 0, cCast);
+		historyBook.copyFrom(from.historyBook);
+		testimony.copyFrom(from.testimony);
+		recency.copyFrom(from.recency);
+		tally=null;
+	}
+// ************************************************************
+	// Hands the phone to the next caller. Returns true when that completes a turn.
+	public boolean nextCaller() {
+		if (log!=null)
+			log.nextCaller(caller);
+		fPlanned=false;
+		callee=nobody;
+		++caller;
+		if (caller==cCharacters) {
+			caller=0;
+			++iTurn;
+			calculatePopularity();
+			if (tally!=null)
+				GossipMetrics.metrics.flush(tally, historyBook.size());
+			return true;
+		}
+		return false;
+	}
+// ************************************************************
+	// A complete call, for use when nobody is the player.
+	// Returns true when the call completes a turn.
+	public boolean stepCall() {
+		planNPCCall();
+		runNPCConversation();
+		return nextCaller();
+	}
+// ************************************************************
+	// A complete turn, for use when nobody is the player. With a RoundScheduler the
+	// calls are made in parallel where they can be, with exactly the same result.
+	public void stepTurn() {
+		if ((scheduler!=null)&&scheduler.canPlay(this))
+			scheduler.playTurn(this);
+		else
+			while (!stepCall()) { }
+	}
+// ************************************************************
+	double blend(double from, double to, double weight) {
+		if (weight<=-1) weight=-1;
+		if (weight>=1) weight=1;
+		// this is a conversion from BNumber to UNumber
+		double uWeightingFactor = 1-((1-weight)/2);
+		double x = to*uWeightingFactor + from*(1.0f-uWeightingFactor);
+		return x;
+	}
+//**********************************************************************
+	public double bSum(double a, double b) {
+		double x2 = boundedInverseTransform(a);
+		double x1 = boundedInverseTransform(b);
+		return boundedTransform(x1+x2);
+	}
+//**********************************************************************
+	double boundedInverseTransform(double boundedNumber) {
+		if (boundedNumber > 0.0f)
+			return (1.0f / (1.0f - boundedNumber)) -1.0f;
+		else
+			return 1.0f - (1.0f / (1.0f + boundedNumber));
+	}
+//**********************************************************************
+	double boundedTransform(double unboundedNumber) {
+		if (unboundedNumber > 0.0f)
+			return 1.0 - (1.0 / (1.0 + unboundedNumber));
+		else
+			return (1.0 / (1.0 - unboundedNumber)) -1.0;
+		}
+// ************************************************************
+	int getAffinityIndex(int iFromCharacter, int iToCharacter) {
+		int AffinityIndex=boundedToInteger(affinity[iFromCharacter*cCast+iToCharacter]);
+		return AffinityIndex;
+	}
+// ************************************************************
+	int getPAffinityIndex(int iPerceiver, int iFromCharacter, int iToCharacter) {
+		int iAffinity=boundedToInteger(perceivedAffinity.get(iPerceiver,iFromCharacter,iToCharacter));
+		return iAffinity;
+	}
+// ************************************************************
+	void declareIndirectAffinity(int iValue,
+										int tiSource,
+										int tiSpeaker,
+										int tiListener,
+										int tiPredicate) {
+		if (log!=null)
+			log.indirect(tiSource, tiSpeaker, tiListener, tiPredicate, iValue);
+		// Record the declaration in the history book
+		int iHistory=recordHistory(tiSpeaker, tiListener, tiSource, tiPredicate, iValue);
+		hearIndirectAffinity(iValue, tiSource, tiSpeaker, tiListener, tiPredicate, iHistory, null);
+	}
+// ------------------------------------------------------------
+	// What the listener makes of an indirect statement that is in the history book at
+	// iHistory. Changes only the listener's affinity and perceptions; see setAffinity
+	// for deltas.
+	void hearIndirectAffinity(int iValue, int tiSource, int tiSpeaker, int tiListener, int tiPredicate,
+			int iHistory, RoundScheduler.ColumnDeltas deltas) {
+		setSuspiciousness(tiSpeaker, tiSource, tiPredicate, tiListener, iHistory, deltas);
+		iLikeWhatIHear=iValue/3; // flattery works
+		// change affinity based on agreement
+		double before=affinity[tiListener*cCast+tiSpeaker];
+		// scale down magnitude of flattery effect
+		double flattery=vain[tiListener]*(integerToBounded(iValue)-perceivedAffinity.get(tiListener,tiSource,tiListener))/4;
+		setAffinity(tiListener, tiSpeaker, bSum(affinity[tiListener*cCast+tiSpeaker],0.08-flattery), deltas);
+		if (fDebug)
+			flatteryDamage+=affinity[tiListener*cCast+tiSpeaker]-before;
+		GossipMetrics.Tally counts=(deltas!=null) ? deltas.tally : tally;
+		if (counts!=null)
+			counts.flatteryDamage+=affinity[tiListener*cCast+tiSpeaker]-before;
+		iLikeWhatIHear=(cAffinityLevels-boundedToInteger(flattery))/3;
+	}
+// ************************************************************
+	void declareAffinity(int iValue, int tiSpeaker, int tiListener, int tiPredicate) {
+		if (log!=null)
+			log.direct(tiSpeaker, tiListener, tiPredicate, iValue);
+		// Record the declaration in the history book
+		int iHistory=recordHistory(tiSpeaker, tiListener, tiSpeaker, tiPredicate, iValue);
+		hearAffinity(iValue, tiSpeaker, tiListener, tiPredicate, iHistory, null);
+	}
+// ------------------------------------------------------------
+	// What the listener makes of a direct statement that is in the history book at
+	// iHistory. Changes only the speaker's row if the speaker is the player, and
+	// otherwise only the listener's affinity and perceptions; see setAffinity for deltas.
+	void hearAffinity(int iValue, int tiSpeaker, int tiListener, int tiPredicate,
+			int iHistory, RoundScheduler.ColumnDeltas deltas) {
+		double bValue=integerToBounded(iValue);
+		if (tiSpeaker==player) {
+			setAffinity(tiSpeaker, tiPredicate, bValue, deltas);
+			perceivedAffinity.set(tiSpeaker,tiSpeaker,tiPredicate,bValue);
+		}
+
+		setSuspiciousness(tiSpeaker, tiSpeaker, tiPredicate, tiListener, iHistory, deltas);
+		double disagreement=(Math.abs(bValue-affinity[tiListener*cCast+tiPredicate]))/4;
+		// change affinity based on agreement
+		double before=affinity[tiListener*cCast+tiSpeaker];
+		setAffinity(tiListener, tiSpeaker, bSum(affinity[tiListener*cCast+tiSpeaker],0.08-disagreement), deltas);
+		if (fDebug) {
+			if ((tiSpeaker==0))
+				System.out.println(disagreement+"  "+before+"  "+affinity[tiListener*cCast+tiSpeaker]);
+			flatteryDamage+=affinity[tiListener*cCast+tiSpeaker]-before;
+		}
+		GossipMetrics.Tally counts=(deltas!=null) ? deltas.tally : tally;
+		if (counts!=null)
+			counts.flatteryDamage+=affinity[tiListener*cCast+tiSpeaker]-before;
+		iLikeWhatIHear=(cAffinityLevels-boundedToInteger(disagreement))/3;
+	}
+// ************************************************************
+	// Returns where in the history book the statement went.
+	int recordHistory(int tiSpeaker, int tiListener, int tiSource, int tiPredicate, int iValue) {
+		int iHistory=historyBook.add(HistoryBook.pack(tiSpeaker, tiListener, tiSource, tiPredicate, iValue));
+		testimony.add(tiListener, tiSource, tiPredicate, iHistory);
+		recency.record(tiSpeaker, tiListener, tiPredicate, iHistory);
+		if (tally!=null)
+			++tally.cStatements;
+		return iHistory;
+	}
+// ************************************************************
+	// Replaces the history book with cFrom statements from a GameSnapshot and
+	// indexes them again, as though they had just been made.
+	void loadHistory(LongBuffer from, int cFrom) {
+		historyBook.load(from, cFrom);
+		testimony=new TestimonyIndex();
+		recency=new RecencyTable();
+		testimony.reserve(cFrom);
+		for (int i=0; (i<cFrom); ++i) {
+			long h=historyBook.get(i);
+			testimony.add(HistoryBook.listener(h), HistoryBook.source(h), HistoryBook.predicate(h), i);
+			recency.record(HistoryBook.speaker(h), HistoryBook.listener(h), HistoryBook.predicate(h), i);
+		}
+	}
+// ************************************************************
+	// Makes room for cMore statements, so that making them allocates nothing.
+	void reserveHistory(int cMore) {
+		historyBook.reserve(cMore);
+		testimony.reserve(historyBook.size()+cMore);
+	}
+// ************************************************************
+	private void setSuspiciousness(int tiSpeaker, int tiSource, int tiPredicate, int tiListener,
+			int iHistory, RoundScheduler.ColumnDeltas deltas) {
+		// the past testimony is everything in the history book that this listener
+		// has heard about what source thinks of predicate, up to and including this
+		// statement at iHistory (so every entry has this source and this predicate).
+		// Usually this statement is the last one; a RoundScheduler may have put later
+		// ones in already.
+		int iTestimony=testimony.find(tiListener, tiSource, tiPredicate);
+		// there will always be at least one entry in the past testimony
+		double meanAffinity=perceivedAffinity.get(tiListener,tiSource,tiPredicate);
+		double sumWeight=1;
+		int cScanned=0;
+		for (int i=testimony.first(iTestimony); (i>=0)&&(i<=iHistory); i=testimony.next(i)) {
+			++cScanned;
+			long h=historyBook.get(i);
+			int iHSpeaker=HistoryBook.speaker(h);
+			double trust=(affinity[tiListener*cCast+iHSpeaker]+1)/2; // make it unitary
+			if (iHSpeaker==tiSource)
+				trust=bSum(trust,trust);
+			sumWeight+=trust;
+			double x=integerToBounded(HistoryBook.value(h));
+			meanAffinity+=trust*x;
+		}
+		if (sumWeight>0) // in difficulty level 2, it is possible for sumWeight to be zero
+			meanAffinity/=sumWeight;
+		GossipMetrics.Tally counts=(deltas!=null) ? deltas.tally : tally;
+		if (counts!=null)
+			counts.scan(cScanned);
+
+		// Calculate the deviations from all previous statements on the
+		double dSuspect=0;
+		for (int i=testimony.first(iTestimony); (i>=0)&&(i<=iHistory); i=testimony.next(i)) {
+			long h=historyBook.get(i);
+			int iHSpeaker=HistoryBook.speaker(h);
+			double deviation=Math.abs(meanAffinity-integerToBounded(HistoryBook.value(h)));
+			// apply gullibility
+			deviation*=1-gullible[tiListener];
+			dSuspect+=deviation;
+			double before=affinity[tiListener*cCast+iHSpeaker];
+			setAffinity(tiListener, iHSpeaker, bSum(affinity[tiListener*cCast+iHSpeaker],0.1-deviation), deltas);
+			if (fDebug) {
+				if (iHSpeaker==0) {
+					System.out.println(tiListener+"  "+deviation+" "
+							+perceivedAffinity.get(tiListener,tiSource,tiPredicate)
+						+"  "+integerToBounded(HistoryBook.value(h))+" "+before+"  "
+							+affinity[tiListener*cCast+iHSpeaker]);
+				}
+				suspectDamage+=affinity[tiListener*cCast+iHSpeaker]-before;
+			}
+			if (counts!=null)
+				counts.suspectDamage+=affinity[tiListener*cCast+iHSpeaker]-before;
+		}
+		iSuspect=(int)(10*dSuspect);
+		if (iSuspect>2) iSuspect=2;
+		perceivedAffinity.set(tiListener,tiSource,tiPredicate,meanAffinity);
+	}
+// ************************************************************
+	// Records everybody's popularity for the turn that has just ended. The sums are
+	// already there, so this costs one division per character.
+	void calculatePopularity() {
+		popularity.record(iTurn, columnSums, cCharacters, cCharacters-1);
+		if (fDebug) {
+			double grandSum=0;
+			for (int i=0; (i<cCharacters); ++i)
+				grandSum+=ArrayKernels.kernels.sumOfSquares(affinity, i*cCast, cCharacters);
+			System.out.println("Grand Sum = "+grandSum+" flater: "+flatteryDamage+"  susp: "+suspectDamage);
+		}
+	}
+// ************************************************************
+	// How popular i is right now, in the middle of a turn as well as at the end of one.
+	double currentPopularity(int i) {
+		return columnSums[i]/(cCharacters-1);
+	}
+// ************************************************************
+	// Changes what i feels for j, and the column sum that goes with it. The column sums
+	// only count the characters in the game, and only they ever change during a game.
+	void setAffinity(int i, int j, double value) {
+		setAffinity(i, j, value, null);
+	}
+	// ------------------------------------------------------------
+	// If deltas is not null, the change to the column sum goes there instead, to be
+	// added in later; a RoundScheduler has conversations on several threads at once,
+	// and the column sums are the one thing they would all change.
+	void setAffinity(int i, int j, double value, RoundScheduler.ColumnDeltas deltas) {
+		int ij=i*cCast+j;
+		if (i!=j) {
+			if (deltas==null)
+				columnSums[j]+=value-affinity[ij];
+			else
+				deltas.add(j, value-affinity[ij]);
+		}
+		affinity[ij]=value;
+	}
+// ************************************************************
+	// Adds up the column sums from scratch, for when affinity has been set all at once
+	// or the number of characters has changed. Each column is added from the top down,
+	// a whole row of affinity at a time.
+	void sumColumns() {
+		Arrays.fill(columnSums, 0);
+		for (int j=0; (j<cCharacters); ++j)
+			ArrayKernels.kernels.addQuotients(columnSums, affinity, j*cCast, cCharacters, 1, j);
+	}
+// ************************************************************
+	double planDirectReport(int iSpeaker, int iListener) {
+		return planDirectReport(iSpeaker, iListener, predicate);
+	}
+	// ------------------------------------------------------------
+	double planDirectReport(int iSpeaker, int iListener, int iPredicate) {
+		// Decides what iSpeaker will say to listener about predicate
+
+		// These intermediate variables exist only for readability
+		double trueValue=affinity[iSpeaker*cCast+iPredicate];
+		double lieValue=perceivedAffinity.get(iSpeaker,iListener,iPredicate);
+
+		// I'm more honest to my friends
+		double bias=bSum(dishonest[iSpeaker],-affinity[iSpeaker*cCast+iListener]);
+
+		// now adjust for difficulty level
+		bias=bSum(bias,difficultyLevel/4);
+
+		// Tell 'em what they want to hear
+		return blend(trueValue,lieValue,bias);
+	}
+// ************************************************************
+	double planIndirectReport(int iSpeaker, int iListener) {
+		return planIndirectReport(iSpeaker, iListener, predicate);
+	}
+	// ------------------------------------------------------------
+	double planIndirectReport(int iSpeaker, int iListener, int iPredicate) {
+		// Decides what iSpeaker will say to listener about predicate's feelings for listener
+		// Warning: this method is identical in form to the above,
+		//          but the array indeces are different!
+
+		// These intermediate variables exist only for readability
+		double lieValue=affinity[iSpeaker*cCast+iListener];
+		double trueValue=perceivedAffinity.get(iSpeaker,iPredicate,iListener);
+
+		// My dishonesty is to make it sound as if the predicate shares my feelings
+		// I'm more honest to my friends
+		double bias=bSum(dishonest[iSpeaker],-affinity[iSpeaker*cCast+iListener]);
+
+		// now adjust for difficulty level
+		bias=bSum(bias,difficultyLevel/4);
+
+		// Tell 'em what they want to hear
+		return blend(trueValue,lieValue,bias);
+	}
+// ************************************************************
+	private void selectCallee() {
+		double bestFoM=0;
+		int bestCallee=nobody;
+		for (int i=0; (i<cCharacters); ++i) {
+			if (i!=caller) {
+				double age=Math.min(howRecent(caller,i,anybody),howRecent(i,caller,anybody))+rand.nextDouble();
+				double foM=age;//+2*affinity[caller*cCast+i];
+				if ((howRecent(caller,callee,i)<(historyBook.size()+1))&(foM>bestFoM)) {
+					bestFoM=foM;
+					bestCallee=i;
+				}
+			}
+		}
+		callee=bestCallee;
+		return;
+	}
+// ************************************************************
+	private void selectPredicate() {
+		double oldestCall=0;
+		int oldestPredicate=nobody;
+		for (int i=0; (i<cCharacters); ++i) {
+			if ((i!=caller)&(i!=callee)) {
+				// the random term allows random selection of otherwise equal candidates
+				double age=Math.min(howRecent(caller,callee,i),howRecent(callee,caller,i))+rand.nextDouble();
+				if (age>oldestCall) {
+					oldestCall=age;
+					oldestPredicate=i;
+				}
+			}
+		}
+		predicate=oldestPredicate;
+		return;
+	}
+// ************************************************************
+	private double howRecent(int iSpeaker, int iListener, int iPredicate) {
+		// This used to walk the history book backwards, stopping at the first match
+		// or at the very first entry, and report how far back it got. A match in the
+		// very first entry therefore counts the same as no match at all, and an empty
+		// history book has nothing in it that is recent.
+		int iLast=recency.lastSeen(iSpeaker, iListener, iPredicate);
+		int depth=historyBook.size()-Math.max(iLast,0);
+		if (tally!=null)
+			tally.depth(depth);
+		return depth;
+	}
+// ************************************************************
+	double integerToBounded(int tInteger) {
+		double affinity=(2*(double)tInteger/cAffinityLevels)-1;
+		// snip off extreme values
+		if (affinity==-1) affinity=-0.98;
+		if (affinity==1) affinity=0.98;
+		return affinity;
+	}
+// ************************************************************
+	static int boundedToInteger(double tBounded) {
+		int statement= (int)(cAffinityLevels*(1+tBounded)/2);
+		return statement;
+	}
+// ************************************************************
+	void printTurnStats() {
+		// for debugging purposes only
+		double[] stats=turnStats();
+		// what character 3 feels for character 0, as it always was; a game has at least four
+		double aff=(cCharacters>3) ? affinity[3*cCast] : Double.NaN;
+		System.out.println("AveDeviance= "+stats[0]+" aveWeight+ "+stats[1]+" aveAffinity= "+stats[2]+" aff: "+aff);
+	}
+// ************************************************************
+	// The numbers behind printTurnStats, kept apart from the printing so that they
+	// can be timed: the average deviance of perceived from actual affinity, the
+	// average weight (which is no longer used, so always 0) and the average affinity.
+	double[] turnStats() {
+		double aveDeviance=0;
+		double aveWeight=0;
+		double aveAffinity=0;
+		double cPairs=cCharacters*(cCharacters-1);
+		// row by row: the sums are taken over whole rows and divided once at the end
+		for (int i=0; (i<cCharacters); ++i) {
+			aveAffinity+=ArrayKernels.kernels.sum(affinity, i*cCast, cCharacters)-affinity[i*cCast+i];
+			for (int j=0; (j<cCharacters); ++j) {
+				if (i!=j)
+					aveDeviance+=perceivedAffinity.squaredDeviance(i, j, affinity, j*cCast, cCharacters);
+			}
+		}
+		aveAffinity/=cPairs;
+		aveDeviance/=cPairs*(cCharacters-1);
+		double[] stats={aveDeviance, aveWeight, aveAffinity};
+		return stats;
+	}
+// ************************************************************
+}
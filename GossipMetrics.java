@@ -0,0 +1,313 @@
+package Gossip;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/*
+ * Counts what the engines and the screen are doing, for anybody watching over JMX
+ * (jconsole, say, or VisualVM) instead of turning on fDebug and reading System.out.
+ * It is only there when the JVM is started with
+ *
+ *     -Dgossip.metrics=true
+ *
+ * in which case it is registered as Gossip:type=GossipMetrics and metrics is not
+ * null. Otherwise nothing is counted and the engine pays one null check here and there.
+ *
+ * The engine does not count into this directly. Each engine has a Tally of plain
+ * longs and doubles that only it touches, and hands it over once a turn, at the end
+ * of the turn; a RoundScheduler gives each conversation a Tally of its own and adds
+ * them to the engine's before that. So a statement costs a few additions to fields
+ * nobody else is writing, and the LongAdders here, which any number of engines
+ * (a tournament's threads, say) share, are touched once a turn. What is shown is
+ * therefore up to the end of the latest turn; the game on the screen is a turn behind.
+ * Engine copies that LookaheadPlanner plays on count nothing.
+ *
+ * The figures:
+ * - statements: every statement put in a history book
+ * - turns, and turns per second since the last time anybody asked
+ * - the history book size of the engine that most recently finished a turn
+ * - testimony scans: how many past statements setSuspiciousness goes over
+ * - howRecent depths: how far back in the history book howRecent finds its answer,
+ *   which is how far the loop it replaced would have walked
+ * - flattery and suspect damage: how much affinity statements have gained or lost
+ *   through flattery and disagreement, and through suspicion (what fDebug prints)
+ * - paint time for each display, measured around paint() on whichever thread draws
+ *
+ * Histograms go up in powers of two, as getHistogramBuckets() says.
+ */
+public class GossipMetrics implements GossipMetricsMBean {
+	static final int cBuckets=32;
+	static final GossipMetrics metrics=register();
+
+	private final LongAdder statements=new LongAdder();
+	private final LongAdder turns=new LongAdder();
+	private volatile long historyBookSize;
+	private final Histogram testimonyScans=new Histogram();
+	private final Histogram howRecentDepths=new Histogram();
+	private final DoubleAdder flatteryDamage=new DoubleAdder();
+	private final DoubleAdder suspectDamage=new DoubleAdder();
+	private final LongAdder[] paintCounts=new LongAdder[Gossip.displayNames.length];
+	private final LongAdder[] paintNanos=new LongAdder[Gossip.displayNames.length];
+	private final LongAccumulator[] paintMaxNanos=new LongAccumulator[Gossip.displayNames.length];
+
+	// for getTurnsPerSecond()
+	private long lastTurns;
+	private long lastNanos=System.nanoTime();
+// ************************************************************
+	// One engine's counts since it last handed them over; see flush().
+	static final class Tally {
+		long cStatements;
+		final long[] scans=new long[cBuckets];
+		long scanTotal, scanMax;
+		final long[] depths=new long[cBuckets];
+		long depthTotal, depthMax;
+		double flatteryDamage, suspectDamage;
+		// ------------------------------------------------------------
+		void scan(long cScanned) {
+			++scans[bucket(cScanned)];
+			scanTotal+=cScanned;
+			scanMax=Math.max(scanMax, cScanned);
+		}
+		// ------------------------------------------------------------
+		void depth(long cDeep) {
+			++depths[bucket(cDeep)];
+			depthTotal+=cDeep;
+			depthMax=Math.max(depthMax, cDeep);
+		}
+		// ------------------------------------------------------------
+		// adds these counts to to, and starts again from nothing
+		void addTo(Tally to) {
+			to.cStatements+=cStatements;
+			for (int b=0; (b<cBuckets); ++b) {
+				to.scans[b]+=scans[b];
+				to.depths[b]+=depths[b];
+			}
+			to.scanTotal+=scanTotal;
+			to.scanMax=Math.max(to.scanMax, scanMax);
+			to.depthTotal+=depthTotal;
+			to.depthMax=Math.max(to.depthMax, depthMax);
+			to.flatteryDamage+=flatteryDamage;
+			to.suspectDamage+=suspectDamage;
+			clear();
+		}
+		// ------------------------------------------------------------
+		void clear() {
+			cStatements=0;
+			Arrays.fill(scans, 0);
+			scanTotal=0;
+			scanMax=0;
+			Arrays.fill(depths, 0);
+			depthTotal=0;
+			depthMax=0;
+			flatteryDamage=0;
+			suspectDamage=0;
+		}
+	}
+// ************************************************************
+	// A histogram that any number of threads can add to.
+	private static final class Histogram {
+		final LongAdder[] counts=new LongAdder[cBuckets];
+		final LongAdder total=new LongAdder();
+		final LongAccumulator max=new LongAccumulator(Math::max, 0);
+		// ------------------------------------------------------------
+		Histogram() {
+			for (int b=0; (b<cBuckets); ++b)
+				counts[b]=new LongAdder();
+		}
+		// ------------------------------------------------------------
+		void add(long[] tCounts, long tTotal, long tMax) {
+			for (int b=0; (b<cBuckets); ++b) {
+				if (tCounts[b]!=0)
+					counts[b].add(tCounts[b]);
+			}
+			total.add(tTotal);
+			max.accumulate(tMax);
+		}
+		// ------------------------------------------------------------
+		long[] counts() {
+			long[] sums=new long[cBuckets];
+			for (int b=0; (b<cBuckets); ++b)
+				sums[b]=counts[b].sum();
+			return sums;
+		}
+		// ------------------------------------------------------------
+		double mean() {
+			long cValues=0;
+			for (int b=0; (b<cBuckets); ++b)
+				cValues+=counts[b].sum();
+			return (cValues==0) ? 0 : (double)total.sum()/cValues;
+		}
+		// ------------------------------------------------------------
+		void reset() {
+			for (int b=0; (b<cBuckets); ++b)
+				counts[b].reset();
+			total.reset();
+			max.reset();
+		}
+	}
+// ************************************************************
+	GossipMetrics() {
+		for (int i=0; (i<paintCounts.length); ++i) {
+			paintCounts[i]=new LongAdder();
+			paintNanos[i]=new LongAdder();
+			paintMaxNanos[i]=new LongAccumulator(Math::max, 0);
+		}
+	}
+// ************************************************************
+	private static GossipMetrics register() {
+		if (!Boolean.getBoolean("gossip.metrics"))
+			return null;
+		GossipMetrics metrics=new GossipMetrics();
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, new ObjectName("Gossip:type=GossipMetrics"));
+		}
+		catch (JMException e) {
+			System.err.println("Gossip: cannot register GossipMetrics, so there will be no metrics: "+e);
+			return null;
+		}
+		return metrics;
+	}
+// ************************************************************
+	// 0 for 0, 1 for 1, 2 for 2-3, 3 for 4-7 and so on, up to the last bucket
+	static int bucket(long n) {
+		return Math.min(64-Long.numberOfLeadingZeros(n), cBuckets-1);
+	}
+// ************************************************************
+	// What an engine has counted, at the end of one of its turns; the tally starts
+	// again from nothing.
+	void flush(Tally tally, int cHistory) {
+		statements.add(tally.cStatements);
+		turns.increment();
+		historyBookSize=cHistory;
+		testimonyScans.add(tally.scans, tally.scanTotal, tally.scanMax);
+		howRecentDepths.add(tally.depths, tally.depthTotal, tally.depthMax);
+		flatteryDamage.add(tally.flatteryDamage);
+		suspectDamage.add(tally.suspectDamage);
+		tally.clear();
+	}
+// ************************************************************
+	void painted(int iDisplay, long nanos) {
+		if ((iDisplay>=0)&&(iDisplay<paintCounts.length)) {
+			paintCounts[iDisplay].increment();
+			paintNanos[iDisplay].add(nanos);
+			paintMaxNanos[iDisplay].accumulate(nanos);
+		}
+	}
+// ************************************************************
+	public long getStatements() {
+		return statements.sum();
+	}
+	// ------------------------------------------------------------
+	public long getTurns() {
+		return turns.sum();
+	}
+	// ------------------------------------------------------------
+	public synchronized double getTurnsPerSecond() {
+		long now=System.nanoTime();
+		long cTurns=turns.sum();
+		double rate=(now>lastNanos) ? (cTurns-lastTurns)/((now-lastNanos)/1e9) : 0;
+		lastTurns=cTurns;
+		lastNanos=now;
+		return rate;
+	}
+	// ------------------------------------------------------------
+	public long getHistoryBookSize() {
+		return historyBookSize;
+	}
+// ************************************************************
+	public String[] getHistogramBuckets() {
+		String[] names=new String[cBuckets];
+		names[0]="0";
+		for (int b=1; (b<cBuckets); ++b) {
+			long low=1L<<(b-1);
+			if (b==cBuckets-1)
+				names[b]=low+" and up";
+			else if (b==1)
+				names[b]="1";
+			else
+				names[b]=low+"-"+(2*low-1);
+		}
+		return names;
+	}
+	// ------------------------------------------------------------
+	public long[] getTestimonyScanHistogram() {
+		return testimonyScans.counts();
+	}
+	// ------------------------------------------------------------
+	public double getTestimonyScanMean() {
+		return testimonyScans.mean();
+	}
+	// ------------------------------------------------------------
+	public long getTestimonyScanMax() {
+		return testimonyScans.max.get();
+	}
+	// ------------------------------------------------------------
+	public long[] getHowRecentDepthHistogram() {
+		return howRecentDepths.counts();
+	}
+	// ------------------------------------------------------------
+	public double getHowRecentDepthMean() {
+		return howRecentDepths.mean();
+	}
+	// ------------------------------------------------------------
+	public long getHowRecentDepthMax() {
+		return howRecentDepths.max.get();
+	}
+// ************************************************************
+	public double getFlatteryDamage() {
+		return flatteryDamage.sum();
+	}
+	// ------------------------------------------------------------
+	public double getSuspectDamage() {
+		return suspectDamage.sum();
+	}
+// ************************************************************
+	public String[] getDisplays() {
+		return Gossip.displayNames.clone();
+	}
+	// ------------------------------------------------------------
+	public long[] getPaintCounts() {
+		long[] counts=new long[paintCounts.length];
+		for (int i=0; (i<counts.length); ++i)
+			counts[i]=paintCounts[i].sum();
+		return counts;
+	}
+	// ------------------------------------------------------------
+	public double[] getPaintMeanMillis() {
+		double[] means=new double[paintCounts.length];
+		for (int i=0; (i<means.length); ++i) {
+			long cPaints=paintCounts[i].sum();
+			means[i]=(cPaints==0) ? 0 : paintNanos[i].sum()/1e6/cPaints;
+		}
+		return means;
+	}
+	// ------------------------------------------------------------
+	public double[] getPaintMaxMillis() {
+		double[] maxima=new double[paintMaxNanos.length];
+		for (int i=0; (i<maxima.length); ++i)
+			maxima[i]=paintMaxNanos[i].get()/1e6;
+		return maxima;
+	}
+// ************************************************************
+	public synchronized void reset() {
+		statements.reset();
+		turns.reset();
+		testimonyScans.reset();
+		howRecentDepths.reset();
+		flatteryDamage.reset();
+		suspectDamage.reset();
+		for (int i=0; (i<paintCounts.length); ++i) {
+			paintCounts[i].reset();
+			paintNanos[i].reset();
+			paintMaxNanos[i].reset();
+		}
+		lastTurns=0;
+		lastNanos=System.nanoTime();
+	}
+// ************************************************************
+}
@@ -0,0 +1,31 @@
+package Gossip;
+
+/*
+ * What GossipMetrics shows over JMX. Histograms are arrays of counts, one for each of
+ * the ranges in getHistogramBuckets(); the paint figures are arrays with one entry
+ * for each of the displays in getDisplays().
+ */
+public interface GossipMetricsMBean {
+	long getStatements();
+	long getTurns();
+	double getTurnsPerSecond();
+	long getHistoryBookSize();
+
+	String[] getHistogramBuckets();
+	long[] getTestimonyScanHistogram();
+	double getTestimonyScanMean();
+	long getTestimonyScanMax();
+	long[] getHowRecentDepthHistogram();
+	double getHowRecentDepthMean();
+	long getHowRecentDepthMax();
+
+	double getFlatteryDamage();
+	double getSuspectDamage();
+
+	String[] getDisplays();
+	long[] getPaintCounts();
+	double[] getPaintMeanMillis();
+	double[] getPaintMaxMillis();
+
+	void reset();
+}
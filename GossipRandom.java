@@ -0,0 +1,49 @@
+package Gossip;
+
+import java.util.Random;
+
+/*
+ * A java.util.Random whose state can be read and put back, so that a replay log
+ * (and a saved game) can say exactly where the engine's random numbers had got to.
+ *
+ * It is the same 48-bit linear congruential generator as java.util.Random, with the
+ * same constants, so for any seed it produces exactly the same numbers; all the
+ * nextDouble(), nextInt() and so on of Random are built on next(), which is all that
+ * is replaced here. The one thing state() does not capture is the second Gaussian
+ * that nextGaussian() keeps back; the engine never asks for Gaussians.
+ *
+ * Unlike Random it is not safe to share between threads. Each engine has its own.
+ */
+class GossipRandom extends Random {
+	private static final long serialVersionUID=1L;
+	private static final long multiplier=0x5DEECE66DL;
+	private static final long addend=0xBL;
+	private static final long mask=(1L<<48)-1;
+
+	// No initializer: Random's constructor sets this, through setSeed, before any
+	// initializer here would run, and an initializer would then overwrite it.
+	private long state;
+// ************************************************************
+	GossipRandom(long seed) {
+		super(seed);
+	}
+// ************************************************************
+	public synchronized void setSeed(long seed) {
+		super.setSeed(seed);	// forgets the kept-back Gaussian
+		state=(seed^multiplier)&mask;
+	}
+// ************************************************************
+	protected int next(int bits) {
+		state=(state*multiplier+addend)&mask;
+		return (int)(state>>>(48-bits));
+	}
+// ************************************************************
+	long state() {
+		return state;
+	}
+// ************************************************************
+	void setState(long tState) {
+		state=tState&mask;
+	}
+// ************************************************************
+}
@@ -0,0 +1,231 @@
+package Gossip;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/*
+ * Plays a great many complete headless games, spread across every core, and reports
+ * how popular each character ended up and how often each one won. This is how we
+ * balance the trait values and check changes to the AI.
+ *
+ *   java Gossip.Gossip tournament [games=10000] [characters=6] [turns=9]
+ *                                 [difficulty=1] [threads=<cores>] [seed=27]
+ *
+ * turns defaults to the length of a game on the screen, 3*(characters-3).
+ * Casts bigger than six get the same made-up extras in every game.
+ * Game g is played with its own seed, made from seed and g alone (see gameSeed),
+ * so a tournament gives the same answer however many threads play it.
+ *
+ * As on the end-of-game screen, a character's score is how much his or her
+ * popularity rose over the game, and the winner is the character with the best
+ * score (ties go to the lower-numbered character).
+ *
+ * The games are split up with fork-join: each task plays a run of games into its
+ * own Standings, and Standings are merged on the way back up, so the threads never
+ * share anything while they play.
+ */
+public class GossipTournament {
+	static final int cGamesPerTask=16;	// small enough to balance, big enough to be worth a task
+// ************************************************************
+	// What a run of games added up to. Every game's final popularities are kept as
+	// well, a row of cCharacters doubles a game, so that the percentiles are exact;
+	// that is 48 bytes a game for six characters, nothing beside playing it.
+	static class Standings {
+		final int cCharacters;
+		long cGames;
+		final long[] cWins;
+		final double[] sum, sumOfSquares, min, max;
+		double[] finals=new double[0];	// finals[iGame*cCharacters+i]
+		// ------------------------------------------------------------
+		Standings(int tcCharacters) {
+			cCharacters=tcCharacters;
+			cWins=new long[cCharacters];
+			sum=new double[cCharacters];
+			sumOfSquares=new double[cCharacters];
+			min=new double[cCharacters];
+			max=new double[cCharacters];
+			for (int i=0; (i<cCharacters); ++i) {
+				min[i]=Double.MAX_VALUE;
+				max[i]=-Double.MAX_VALUE;
+			}
+		}
+		// ------------------------------------------------------------
+		void record(double[] finalPopularity, int iWinner) {
+			int iRow=(int)cGames*cCharacters;
+			if (iRow+cCharacters>finals.length)
+				finals=Arrays.copyOf(finals, Math.max(2*finals.length, iRow+cCharacters));
+			System.arraycopy(finalPopularity, 0, finals, iRow, cCharacters);
+			++cGames;
+			++cWins[iWinner];
+			for (int i=0; (i<cCharacters); ++i) {
+				double p=finalPopularity[i];
+				sum[i]+=p;
+				sumOfSquares[i]+=p*p;
+				min[i]=Math.min(min[i],p);
+				max[i]=Math.max(max[i],p);
+			}
+		}
+		// ------------------------------------------------------------
+		void add(Standings other) {
+			int iRow=(int)cGames*cCharacters;
+			int cOther=(int)other.cGames*cCharacters;
+			if (iRow+cOther>finals.length)
+				finals=Arrays.copyOf(finals, iRow+cOther);
+			System.arraycopy(other.finals, 0, finals, iRow, cOther);
+			cGames+=other.cGames;
+			for (int i=0; (i<cCharacters); ++i) {
+				cWins[i]+=other.cWins[i];
+				sum[i]+=other.sum[i];
+				sumOfSquares[i]+=other.sumOfSquares[i];
+				min[i]=Math.min(min[i],other.min[i]);
+				max[i]=Math.max(max[i],other.max[i]);
+			}
+		}
+		// ------------------------------------------------------------
+		// Everybody's final popularities, each character's sorted, for percentile().
+		double[][] sorted() {
+			double[][] sorted=new double[cCharacters][(int)cGames];
+			for (int g=0; (g<cGames); ++g) {
+				for (int i=0; (i<cCharacters); ++i)
+					sorted[i][g]=finals[g*cCharacters+i];
+			}
+			for (int i=0; (i<cCharacters); ++i)
+				Arrays.sort(sorted[i]);
+			return sorted;
+		}
+		// ------------------------------------------------------------
+		// The popularity the given fraction of games finished at or below: the
+		// ceil(fraction*cGames)-th smallest of them, exactly.
+		static double percentile(double[] sorted, double fraction) {
+			int iRank=(int)Math.ceil(fraction*sorted.length);
+			return sorted[Math.max(0, Math.min(sorted.length-1, iRank-1))];
+		}
+		// ------------------------------------------------------------
+	}
+// ************************************************************
+	static class Games extends RecursiveTask<Standings> {
+		private static final long serialVersionUID=1L;
+		final int iFirst, iLast; // games iFirst up to but not including iLast
+		final CastMember[] cast;
+		final int cCharacters, maxTurns, difficultyLevel;
+		final long seed;
+		// ------------------------------------------------------------
+		Games(int tiFirst, int tiLast, CastMember[] tCast, int tcCharacters, int tMaxTurns, int tDifficultyLevel, long tSeed) {
+			iFirst=tiFirst;
+			iLast=tiLast;
+			cast=tCast;
+			cCharacters=tcCharacters;
+			maxTurns=tMaxTurns;
+			difficultyLevel=tDifficultyLevel;
+			seed=tSeed;
+		}
+		// ------------------------------------------------------------
+		protected Standings compute() {
+			if (iLast-iFirst>cGamesPerTask) {
+				int iMiddle=(iFirst+iLast)>>>1;
+				Games left=new Games(iFirst, iMiddle, cast, cCharacters, maxTurns, difficultyLevel, seed);
+				Games right=new Games(iMiddle, iLast, cast, cCharacters, maxTurns, difficultyLevel, seed);
+				left.fork();
+				Standings standings=right.compute();
+				standings.add(left.join());
+				return standings;
+			}
+			Standings standings=new Standings(cCharacters);
+			double[] finalPopularity=new double[cCharacters];
+			for (int iGame=iFirst; (iGame<iLast); ++iGame) {
+				int iWinner=playGame(cast, gameSeed(seed, iGame), cCharacters, maxTurns, difficultyLevel, finalPopularity);
+				standings.record(finalPopularity, iWinner);
+			}
+			return standings;
+		}
+		// ------------------------------------------------------------
+	}
+// ************************************************************
+	// The seed of game iGame. Consecutive seeds make java.util.Random start off with
+	// much the same numbers, which would make neighbouring games alike, so seed+iGame
+	// is spread over all 64 bits first, the same way LookaheadPlanner seeds its passes.
+	static long gameSeed(long seed, int iGame) {
+		return (seed+iGame)*0x9E3779B97F4A7C15L;
+	}
+// ************************************************************
+	// Plays one game to the end, fills in everybody's final popularity and returns the winner.
+	static int playGame(CastMember[] cast, long seed, int cCharacters, int maxTurns, int difficultyLevel, double[] finalPopularity) {
+		GossipEngine engine=new GossipEngine(seed, cast);
+		engine.newGame();
+		engine.cCharacters=cCharacters;
+		engine.difficultyLevel=difficultyLevel;
+		engine.startGame();
+		engine.maxTurns=maxTurns;
+		while (!engine.isGameOver())
+			engine.stepTurn();
+
+		int iWinner=0;
+		double bestScore=-Double.MAX_VALUE;
+		for (int i=0; (i<cCharacters); ++i) {
+			finalPopularity[i]=engine.popularity.get(i, engine.iTurn);
+			double score=finalPopularity[i]-engine.popularity.get(i, 0);
+			if (score>bestScore) {
+				bestScore=score;
+				iWinner=i;
+			}
+		}
+		return iWinner;
+	}
+// ************************************************************
+	public static void main(String args[]) {
+		int cGames=10000;
+		int cCharacters=GossipEngine.maxCharacters;
+		int maxTurns=-1;
+		int difficultyLevel=1;
+		int cThreads=Runtime.getRuntime().availableProcessors();
+		long seed=27;
+		for (int i=0; (i<args.length); ++i) {
+			String[] option=args[i].split("=",2);
+			if (option.length!=2)
+				usage("expected name=value, not "+args[i]);
+			if (option[0].equals("games")) cGames=Integer.parseInt(option[1]);
+			else if (option[0].equals("characters")) cCharacters=Integer.parseInt(option[1]);
+			else if (option[0].equals("turns")) maxTurns=Integer.parseInt(option[1]);
+			else if (option[0].equals("difficulty")) difficultyLevel=Integer.parseInt(option[1]);
+			else if (option[0].equals("threads")) cThreads=Integer.parseInt(option[1]);
+			else if (option[0].equals("seed")) seed=Long.parseLong(option[1]);
+			else usage("unknown option "+option[0]);
+		}
+		if (cGames<1)
+			usage("a tournament needs at least one game");
+		if (cCharacters<3)
+			usage("a game needs at least three characters");
+		if (maxTurns<0)
+			maxTurns=3*(cCharacters-3);
+
+		CastMember[] cast=CastMember.extendedCast(Math.max(cCharacters,GossipEngine.maxCharacters), seed);
+		ForkJoinPool pool=new ForkJoinPool(cThreads);
+		long start=System.nanoTime();
+		Standings standings=pool.invoke(new Games(0, cGames, cast, cCharacters, maxTurns, difficultyLevel, seed));
+		double seconds=(System.nanoTime()-start)/1e9;
+		pool.shutdown();
+
+		System.out.println(cGames+" games, "+cCharacters+" characters, "+maxTurns+" turns, difficulty "
+				+difficultyLevel+", seed "+seed);
+		System.out.println(String.format("%d threads, %.2f s, %.0f games/s", cThreads, seconds, cGames/seconds));
+		System.out.println();
+		System.out.println("final popularity                 mean     sd     min    p10 median    p90    max   wins");
+		double[][] sorted=standings.sorted();
+		for (int i=0; (i<cCharacters); ++i) {
+			double mean=standings.sum[i]/standings.cGames;
+			double variance=standings.sumOfSquares[i]/standings.cGames-mean*mean;
+			System.out.println(String.format("%-30s %6.3f %6.3f %7.3f %6.3f %6.3f %6.3f %6.3f %5.1f%%",
+					cast[i].name, mean, Math.sqrt(Math.max(variance,0)), standings.min[i],
+					Standings.percentile(sorted[i],0.1), Standings.percentile(sorted[i],0.5), Standings.percentile(sorted[i],0.9),
+					standings.max[i], 100.0*standings.cWins[i]/standings.cGames));
+		}
+	}
+// ************************************************************
+	private static void usage(String problem) {
+		System.err.println(problem);
+		System.err.println("usage: tournament [games=N] [characters=N] [turns=N] [difficulty=0|1|2] [threads=N] [seed=N]");
+		System.exit(1);
+	}
+// ************************************************************
+}
@@ -0,0 +1,66 @@
+package Gossip;
+
+import java.nio.DoubleBuffer;
+
+/*
+ * Perceived affinities as exact doubles on the heap, the way the game has always kept them.
+ * They are one flat array, row-major: perceiver, then from, then to. So everything one
+ * perceiver thinks one character feels is a row of cCast consecutive doubles, which
+ * the turn stats (see ArrayKernels) stream through. One array can hold no more than
+ * 2^31 doubles, which is a cast of 1290; bigger casts need QuantizedPerceptions.
+ */
+class HeapPerceptions extends Perceptions {
+	private final double[] perceivedAffinity;
+// ************************************************************
+	HeapPerceptions(int tcCast) {
+		super(tcCast);
+		if ((long)tcCast*tcCast*tcCast>Integer.MAX_VALUE-8)
+			throw new IllegalArgumentException("a cast of "+tcCast+" is too big for HeapPerceptions");
+		perceivedAffinity=new double[tcCast*tcCast*tcCast];
+	}
+// ************************************************************
+	private HeapPerceptions(int tcCast, double[] tPerceivedAffinity) {
+		super(tcCast);
+		perceivedAffinity=tPerceivedAffinity;
+	}
+// ************************************************************
+	double get(int iPerceiver, int iFromCharacter, int iToCharacter) {
+		return perceivedAffinity[(iPerceiver*cCast+iFromCharacter)*cCast+iToCharacter];
+	}
+// ************************************************************
+	void set(int iPerceiver, int iFromCharacter, int iToCharacter, double value) {
+		perceivedAffinity[(iPerceiver*cCast+iFromCharacter)*cCast+iToCharacter]=value;
+	}
+// ************************************************************
+	double errorBound() {
+		return 0;
+	}
+// ************************************************************
+	// the row is contiguous, so it is two runs either side of iFromCharacter
+	double squaredDeviance(int iPerceiver, int iFromCharacter, double[] truth, int iTruth, int cCharacters) {
+		int iRow=(iPerceiver*cCast+iFromCharacter)*cCast;
+		return ArrayKernels.kernels.sumOfSquaredDifferences(perceivedAffinity, iRow, truth, iTruth, iFromCharacter)
+				+ArrayKernels.kernels.sumOfSquaredDifferences(perceivedAffinity, iRow+iFromCharacter+1,
+						truth, iTruth+iFromCharacter+1, cCharacters-iFromCharacter-1);
+	}
+// ************************************************************
+	Perceptions copy() {
+		return new HeapPerceptions(cCast, perceivedAffinity.clone());
+	}
+// ------------------------------------------------------------
+	void copyFrom(Perceptions from) {
+		if (from instanceof HeapPerceptions)
+			System.arraycopy(((HeapPerceptions)from).perceivedAffinity, 0, perceivedAffinity, 0, perceivedAffinity.length);
+		else
+			super.copyFrom(from);
+	}
+// ************************************************************
+	void save(int iPerceiver, DoubleBuffer to) {
+		to.put(perceivedAffinity, iPerceiver*cCast*cCast, cCast*cCast);
+	}
+// ************************************************************
+	void load(int iPerceiver, DoubleBuffer from) {
+		from.get(perceivedAffinity, iPerceiver*cCast*cCast, cCast*cCast);
+	}
+// ************************************************************
+}
@@ -0,0 +1,101 @@
+package Gossip;
+
+import java.nio.LongBuffer;
+import java.util.Arrays;
+
+/*
+ * The record of every statement ever made, in order. Each statement used to be a
+ * History object with five ints; now it is packed into a single long:
+ *
+ *   bits 60-63  value (an affinity level, 0-8)
+ *   bits 45-59  speaker
+ *   bits 30-44  listener
+ *   bits 15-29  source (the speaker, for a direct statement)
+ *   bits  0-14  predicate
+ *
+ * so the cast can have at most 32767 characters. The longs live in one growable
+ * array; reserve() makes room ahead of time so that adding a statement allocates nothing.
+ */
+class HistoryBook {
+	static final int maxCast=1<<15;
+	private static final int cIndexBits=15;
+	private static final long indexMask=maxCast-1;
+
+	private long[] entries=new long[256];
+	private int cEntries;
+// ************************************************************
+	static long pack(int tiSpeaker, int tiListener, int tiSource, int tiPredicate, int tiValue) {
+		return ((long)tiValue<<(4*cIndexBits))
+				|((long)tiSpeaker<<(3*cIndexBits))
+				|((long)tiListener<<(2*cIndexBits))
+				|((long)tiSource<<cIndexBits)
+				|tiPredicate;
+	}
+// ------------------------------------------------------------
+	static int speaker(long entry) { return (int)((entry>>>(3*cIndexBits))&indexMask); }
+	static int listener(long entry) { return (int)((entry>>>(2*cIndexBits))&indexMask); }
+	static int source(long entry) { return (int)((entry>>>cIndexBits)&indexMask); }
+	static int predicate(long entry) { return (int)(entry&indexMask); }
+	static int value(long entry) { return (int)(entry>>>(4*cIndexBits)); }
+// ************************************************************
+	int size() {
+		return cEntries;
+	}
+// ************************************************************
+	boolean isEmpty() {
+		return cEntries==0;
+	}
+// ************************************************************
+	long get(int i) {
+		return entries[i];
+	}
+// ************************************************************
+	// Returns the position of the new entry.
+	int add(long entry) {
+		if (cEntries==entries.length)
+			reserve(cEntries);
+		entries[cEntries]=entry;
+		return cEntries++;
+	}
+// ************************************************************
+	// Fills in the value of an entry that was added before its value was known;
+	// a RoundScheduler does that.
+	void setValue(int i, int value) {
+		entries[i]=(entries[i]&~(0xFL<<(4*cIndexBits)))|((long)value<<(4*cIndexBits));
+	}
+// ************************************************************
+	// an independent copy, for an engine copied to look ahead with
+	HistoryBook copy() {
+		HistoryBook copy=new HistoryBook();
+		copy.copyFrom(this);
+		return copy;
+	}
+// ------------------------------------------------------------
+	// makes this the same as from, reusing the array if it is big enough
+	void copyFrom(HistoryBook from) {
+		cEntries=0;
+		reserve(from.cEntries);
+		System.arraycopy(from.entries, 0, entries, 0, from.cEntries);
+		cEntries=from.cEntries;
+	}
+// ************************************************************
+	// copies every statement into a GameSnapshot
+	void save(LongBuffer to) {
+		to.put(entries,0,cEntries);
+	}
+// ************************************************************
+	// replaces every statement with cFrom statements from a GameSnapshot
+	void load(LongBuffer from, int cFrom) {
+		cEntries=0;
+		reserve(cFrom);
+		from.get(entries,0,cFrom);
+		cEntries=cFrom;
+	}
+// ************************************************************
+	// makes sure that cMore statements can be added without growing the array
+	void reserve(int cMore) {
+		if (cEntries+cMore>entries.length)
+			entries=Arrays.copyOf(entries,Math.max(cEntries+cMore,2*entries.length));
+	}
+// ************************************************************
+}
@@ -0,0 +1,127 @@
+package Gossip;
+
+import java.util.Arrays;
+
+/*
+ * An open-addressed hash table of long keys, which gives each key a small number of
+ * its own: 0 for the first key added, 1 for the next and so on. What the caller keeps
+ * for a key goes in its own arrays, indexed by that number, so this one table does for
+ * the history book indexes (TestimonyIndex, RecencyTable) and the message cache
+ * (MessageLayouts), whatever each of them keeps.
+ *
+ * Keys are spread with Fibonacci hashing: multiplied by 2^64 over the golden ratio,
+ * of which the top log2(slots) bits are the slot, so every bit of the key counts and
+ * a table of any size gets all the bits it needs. Collisions are resolved by looking
+ * at the next slot, and the table is kept at most half full. Neither find() nor add()
+ * allocates anything, except when add() has to make the table bigger.
+ *
+ * Any key will do except empty (-1), which marks an empty slot.
+ */
+class LongKeyTable {
+	static final long empty=-1;
+
+	private long[] keys;
+	private int[] numbers;	// the number of the key in each slot
+	private int cKeys;
+	private int shift;		// 64-log2(keys.length)
+// ************************************************************
+	LongKeyTable() {
+		allocate(64);
+	}
+// ************************************************************
+	private void allocate(int cSlots) {
+		keys=new long[cSlots];
+		Arrays.fill(keys,empty);
+		numbers=new int[cSlots];
+		shift=64-Integer.numberOfTrailingZeros(cSlots);
+	}
+// ************************************************************
+	private int slot(long tKey) {
+		int mask=keys.length-1;
+		int iSlot=(int)((tKey*0x9E3779B97F4A7C15L)>>>shift);
+		while ((keys[iSlot]!=empty)&&(keys[iSlot]!=tKey))
+			iSlot=(iSlot+1)&mask;
+		return iSlot;
+	}
+// ************************************************************
+	// how many keys there are; they are numbered 0 to size()-1
+	int size() {
+		return cKeys;
+	}
+// ************************************************************
+	// The number of the key, or -1 if it has not been added.
+	int find(long tKey) {
+		int iSlot=slot(tKey);
+		if (keys[iSlot]==empty)
+			return -1;
+		return numbers[iSlot];
+	}
+// ************************************************************
+	// The number of the key, which is size() before the call if it is a new one.
+	int add(long tKey) {
+		int iSlot=slot(tKey);
+		if (keys[iSlot]!=empty)
+			return numbers[iSlot];
+		if (2*(cKeys+1)>keys.length) {
+			rehash();
+			iSlot=slot(tKey);
+		}
+		keys[iSlot]=tKey;
+		numbers[iSlot]=cKeys;
+		return cKeys++;
+	}
+// ************************************************************
+	// forgets every key
+	void clear() {
+		allocate(64);
+		cKeys=0;
+	}
+// ************************************************************
+	// an independent copy
+	LongKeyTable copy() {
+		LongKeyTable copy=new LongKeyTable();
+		copy.copyFrom(this);
+		return copy;
+	}
+// ------------------------------------------------------------
+	// Makes this hold the same keys, with the same numbers, as from. A table that
+	// is already at least as big keeps its arrays and its size, and from's keys are
+	// put into it again, so that a table that a planner's rollout has grown does not
+	// have to grow all over again, allocating, in the next rollout.
+	void copyFrom(LongKeyTable from) {
+		if (keys.length<from.keys.length) {
+			keys=new long[from.keys.length];
+			numbers=new int[from.numbers.length];
+			shift=from.shift;
+		}
+		if (keys.length==from.keys.length) {
+			System.arraycopy(from.keys, 0, keys, 0, keys.length);
+			System.arraycopy(from.numbers, 0, numbers, 0, numbers.length);
+		}
+		else {
+			Arrays.fill(keys,empty);
+			for (int i=0; (i<from.keys.length); ++i) {
+				if (from.keys[i]!=empty) {
+					int iSlot=slot(from.keys[i]);
+					keys[iSlot]=from.keys[i];
+					numbers[iSlot]=from.numbers[i];
+				}
+			}
+		}
+		cKeys=from.cKeys;
+	}
+// ************************************************************
+	private void rehash() {
+		long[] oldKeys=keys;
+		int[] oldNumbers=numbers;
+		allocate(2*oldKeys.length);
+		for (int i=0; (i<oldKeys.length); ++i) {
+			if (oldKeys[i]!=empty) {
+				int iSlot=slot(oldKeys[i]);
+				keys[iSlot]=oldKeys[i];
+				numbers[iSlot]=oldNumbers[i];
+			}
+		}
+	}
+// ************************************************************
+}
@@ -0,0 +1,238 @@
+package Gossip;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * A stronger brain for NPCs. Left to itself an NPC calls whoever it has spoken to
+ * least recently, about whoever they have spoken of least recently, and says what
+ * planDirectReport and planIndirectReport blend together, one statement at a time.
+ * An NPC with a planner instead tries out its possible calls on copies of the whole
+ * engine, plays each copy on a little way into the future, and makes the call that
+ * left it, as far as it can tell, best liked.
+ *
+ * A move is a callee, a predicate, and what the caller will say directly and
+ * indirectly. For each callee and predicate, the statements tried are the ones
+ * planDirectReport and planIndirectReport would make and one level either side of
+ * each, so 9 moves per callee and predicate; 180 moves in a standard game of six.
+ * The callee always answers as the engine would have it answer.
+ *
+ * A rollout makes a copy of the engine (see GossipEngine.copy), makes the move in
+ * the copy, then plays the copy on with stepCall(), everybody choosing as usual,
+ * until horizon more turns have ended or the game is over. Each thread makes one copy
+ * and puts it back the way the engine is with copyFrom() before every rollout after
+ * that, so the rollouts allocate nothing and copy only what is in use.
+ *
+ * The move's score is how much the caller believes the others like it at that point,
+ * going by the caller's own perceivedAffinity: what its popularity looks like from
+ * where it stands. It is not scored by what the others really feel, which the caller
+ * could not know. The rollouts still play everybody as they really are, so the
+ * planner does know how the others will behave in the turns it looks ahead, just not
+ * how that leaves them feeling.
+ *
+ * Moves are rolled out round and round, each pass over all the moves giving each one
+ * a rollout from the same random numbers, so that moves are compared under the same
+ * luck. That goes on until the budget of time runs out; the move with the best
+ * average score so far is made. A thread does not start a rollout unless the time
+ * left covers what its rollouts have been taking (to begin with, what they took in
+ * the latest plan), and it gives up a rollout that is still going at the deadline,
+ * which then counts for nothing. That matters because the game plans on the event
+ * dispatch thread. What the planner does itself overruns the budget by no more than
+ * one stepCall(), and it makes next to no garbage (resetting a copy allocates nothing
+ * once the copy has grown as big as the engine's tables get), so it seldom brings
+ * on a garbage collection; but a collection, the JIT compiler or anything else that
+ * stops the thread while it plans is on top of that, and there is nothing here to
+ * make up for it.
+ *
+ * Rollouts are run on cThreads threads, the one that asked and cThreads-1 daemon
+ * workers; each keeps its own sums and they are added together at the end. While
+ * they run, the engine is only read, so the frame's thread must not change it; it is
+ * the frame's thread that asks for the plan, and it waits for it.
+ *
+ * How many rollouts get done depends on the machine and what else it is doing, so a
+ * planned move is not reproducible: a replay log records the move itself, and a
+ * Replayer puts it back instead of planning again.
+ */
+class LookaheadPlanner {
+	// what a planner decides for the caller
+	static class Move {
+		int callee, predicate;
+		int direct, indirect;	// what the caller says, as affinity levels 0-8
+	}
+
+	final long budgetNanos;
+	final int cThreads;
+	int horizon=2;		// how many turns to play on: 2 goes to the end of the next turn
+	int iOnly=GossipEngine.anybody;	// plan only for this character, or for every NPC
+
+	private final ExecutorService workers;	// null when there is only the one thread
+	private long cPlans;
+	private volatile long rolloutNanos;	// how long a rollout took, on average, in the latest plan
+
+	// about the latest plan, for GossipBenchmark
+	long lastNanos;
+	int lastRollouts;
+	int lastMoves;
+// ************************************************************
+	LookaheadPlanner(long tBudgetNanos, int tcThreads) {
+		budgetNanos=tBudgetNanos;
+		cThreads=Math.max(tcThreads,1);
+		if (cThreads>1) {
+			workers=Executors.newFixedThreadPool(cThreads-1, runnable -> {
+				Thread thread=new Thread(runnable, "Gossip lookahead");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		else
+			workers=null;
+	}
+// ************************************************************
+	boolean plansFor(int caller) {
+		return (iOnly==GossipEngine.anybody)||(iOnly==caller);
+	}
+// ************************************************************
+	// Works out the caller's move within the budget. Returns null if not even one
+	// rollout could be done in the time, or if the thread was interrupted; the engine
+	// then chooses as it always has.
+	Move plan(GossipEngine engine) {
+		long start=System.nanoTime();
+		long deadline=start+budgetNanos;
+		int caller=engine.caller;
+		int cCharacters=engine.cCharacters;
+
+		// every callee and predicate, with the statements the engine would make
+		GossipEngine scratch=engine.copy(0);
+		int n=0;
+		int[] callees=new int[cCharacters*cCharacters];
+		int[] predicates=new int[cCharacters*cCharacters];
+		int[] directs=new int[cCharacters*cCharacters];
+		int[] indirects=new int[cCharacters*cCharacters];
+		for (int i=0; (i<cCharacters); ++i) {
+			for (int j=0; (j<cCharacters); ++j) {
+				if ((i!=caller)&&(j!=caller)&&(j!=i)) {
+					scratch.predicate=j;
+					callees[n]=i;
+					predicates[n]=j;
+					directs[n]=GossipEngine.boundedToInteger(scratch.planDirectReport(caller,i));
+					indirects[n]=GossipEngine.boundedToInteger(scratch.planIndirectReport(caller,i));
+					++n;
+				}
+			}
+		}
+		int cPairs=n;
+		if (cPairs==0)
+			return null;
+		int cMoves=9*cPairs;
+
+		long seed=(++cPlans)*0x9E3779B97F4A7C15L;
+		AtomicInteger next=new AtomicInteger();
+		double[] sums=new double[cMoves];
+		int[] counts=new int[cMoves];
+		Future<?>[] futures=new Future<?>[cThreads-1];
+		for (int i=0; (i<futures.length); ++i) {
+			futures[i]=workers.submit(() -> rollOut(engine, null, deadline, seed, next, cPairs, callees, predicates,
+					directs, indirects, sums, counts));
+		}
+		rollOut(engine, scratch, deadline, seed, next, cPairs, callees, predicates, directs, indirects, sums, counts);
+		// a worker that failed is passed on, as Gossip.await() does with a load
+		for (int i=0; (i<futures.length); ++i) {
+			try {
+				futures[i].get();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return null;
+			}
+			catch (ExecutionException e) {
+				throw new RuntimeException(e.getCause());
+			}
+		}
+
+		int best=-1;
+		int cRollouts=0;
+		for (int i=0; (i<cMoves); ++i) {
+			cRollouts+=counts[i];
+			if ((counts[i]>0)&&((best<0)||(sums[i]/counts[i]>sums[best]/counts[best])))
+				best=i;
+		}
+		lastNanos=System.nanoTime()-start;
+		lastRollouts=cRollouts;
+		lastMoves=cMoves;
+		if (best<0)
+			return null;
+		Move move=new Move();
+		int iPair=best/9;
+		move.callee=callees[iPair];
+		move.predicate=predicates[iPair];
+		move.direct=level(directs[iPair]+(best%9)/3-1);
+		move.indirect=level(indirects[iPair]+(best%9)%3-1);
+		return move;
+	}
+// ************************************************************
+	// One thread's share of the rollouts: takes the next rollout to be done, round
+	// and round the moves, while there is time for one, then adds what it found to
+	// the totals. The rollouts are played on copy, which is made here if it is null.
+	private void rollOut(GossipEngine engine, GossipEngine copy, long deadline, long seed, AtomicInteger next,
+			int cPairs, int[] callees, int[] predicates, int[] directs, int[] indirects, double[] sums, int[] counts) {
+		int cMoves=9*cPairs;
+		double[] mySums=new double[cMoves];
+		int[] myCounts=new int[cMoves];
+		int caller=engine.caller;
+		int cCharacters=engine.cCharacters;
+		int lastTurn=Math.min(engine.iTurn+horizon, engine.maxTurns);
+		long cost=rolloutNanos;
+		long spent=0;
+		int cDone=0;
+		for (;;) {
+			long start=System.nanoTime();
+			if (start+cost>deadline)
+				break;
+			int iRollout=next.getAndIncrement();
+			int iMove=iRollout%cMoves;
+			int iPair=iMove/9;
+			if (copy==null)
+				copy=engine.copy(seed+iRollout/cMoves);
+			else
+				copy.copyFrom(engine, seed+iRollout/cMoves);
+			copy.callee=callees[iPair];
+			copy.predicate=predicates[iPair];
+			copy.runPlannedConversation(level(directs[iPair]+(iMove%9)/3-1), level(indirects[iPair]+(iMove%9)%3-1));
+			copy.nextCaller();
+			while ((copy.iTurn<lastTurn)&&(System.nanoTime()<deadline))
+				copy.stepCall();
+			if (copy.iTurn<lastTurn)
+				break;	// out of time part way through
+			double score=0;
+			for (int j=0; (j<cCharacters); ++j) {
+				if (j!=caller)
+					score+=copy.perceivedAffinity.get(caller, j, caller);
+			}
+			mySums[iMove]+=score/(cCharacters-1);
+			++myCounts[iMove];
+			spent+=System.nanoTime()-start;
+			cost=spent/(++cDone);
+		}
+		if (cDone>0)
+			rolloutNanos=cost;	// any thread's will do for the next plan
+		synchronized (sums) {
+			for (int i=0; (i<cMoves); ++i) {
+				sums[i]+=mySums[i];
+				counts[i]+=myCounts[i];
+			}
+		}
+	}
+// ************************************************************
+	private static int level(int iLevel) {
+		return Math.max(0, Math.min(GossipEngine.cAffinityLevels-1, iLevel));
+	}
+// ************************************************************
+	void close() {
+		if (workers!=null)
+			workers.shutdownNow();
+	}
+// ************************************************************
+}
@@ -0,0 +1,87 @@
+package Gossip;
+
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.font.FontRenderContext;
+import java.awt.font.LineBreakMeasurer;
+import java.awt.font.TextAttribute;
+import java.awt.font.TextLayout;
+import java.text.AttributedString;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/*
+ * The messages in the bottom right corner, already word-wrapped and shaped into
+ * TextLayouts, one per line. postMessage used to build each message string and cut
+ * it into lines of at most 25 characters on every repaint; now each message is laid
+ * out once, the first time it is shown, and drawn from here ever after.
+ *
+ * A message is found by a long key made with key() from what the message says
+ * (who says it about whom, at what affinity level, and so on), so that a frame can
+ * find its message without building the string first. Only when the key is not here
+ * does the caller build the text and add() it. The keys are filed in a LongKeyTable.
+ *
+ * Lines are broken with a LineBreakMeasurer at the width of the message area, using
+ * the real widths of the glyphs in the font, so a line of wide letters no longer runs
+ * off the edge of the window and a line of narrow ones is no longer cut short.
+ *
+ * Glyph shapes depend on the FontRenderContext (antialiasing and so on), so the
+ * layouts are only good for the context they were made in. If a frame is drawn with a
+ * different one, everything is thrown away and laid out again.
+ */
+class MessageLayouts {
+	private static final int cFieldBits=12;
+
+	private final Font font;
+	private final float wrapWidth;
+	private FontRenderContext context;
+
+	private final LongKeyTable keys=new LongKeyTable();
+	private TextLayout[][] layouts=new TextLayout[64][];	// the message for each key
+// ************************************************************
+	MessageLayouts(Font tFont, float tWrapWidth) {
+		font=tFont;
+		wrapWidth=tWrapWidth;
+	}
+// ************************************************************
+	// Packs a kind of message and up to four small numbers (character indices,
+	// affinity levels and the like, each less than 4096) into a key.
+	static long key(int kind, int a, int b, int c, int d) {
+		return ((long)kind<<(4*cFieldBits))|((long)(a&0xfff)<<(3*cFieldBits))
+				|((long)(b&0xfff)<<(2*cFieldBits))|((long)(c&0xfff)<<cFieldBits)|(d&0xfff);
+	}
+// ************************************************************
+	// Returns the lines of the message with this key, or null if it has not been laid
+	// out yet for the context g is drawing with.
+	TextLayout[] find(Graphics2D g, long tKey) {
+		if (!g.getFontRenderContext().equals(context)) {
+			context=g.getFontRenderContext();
+			keys.clear();
+			layouts=new TextLayout[64][];
+			return null;
+		}
+		int iKey=keys.find(tKey);
+		if (iKey<0)
+			return null;
+		return layouts[iKey];
+	}
+// ************************************************************
+	// Lays out the message, files it under the key and returns its lines.
+	// find() must have been called first, for the same Graphics2D.
+	TextLayout[] add(long tKey, String text) {
+		AttributedString attributed=new AttributedString(text);
+		attributed.addAttribute(TextAttribute.FONT, font);
+		LineBreakMeasurer measurer=new LineBreakMeasurer(attributed.getIterator(), context);
+		ArrayList<TextLayout> lines=new ArrayList<TextLayout>();
+		while (measurer.getPosition()<text.length())
+			lines.add(measurer.nextLayout(wrapWidth));
+		TextLayout[] message=lines.toArray(new TextLayout[lines.size()]);
+
+		int iKey=keys.add(tKey);
+		if (iKey==layouts.length)
+			layouts=Arrays.copyOf(layouts, 2*iKey);
+		layouts[iKey]=message;
+		return message;
+	}
+// ************************************************************
+}
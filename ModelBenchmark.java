@@ -0,0 +1,239 @@
+package Gossip;
+
+import java.util.Random;
+
+/*
+ * Microbenchmarks for the pieces of the social model: the Bounded Number arithmetic,
+ * a single statement (declareAffinity or declareIndirectAffinity, which goes on to
+ * setSuspiciousness), calculatePopularity (and sumColumns, which it used to amount
+ * to) and the sums behind printTurnStats.
+ *
+ *   java Gossip.GossipBenchmark model [castSize=6,25,100] [history=1000,10000,100000]
+ *
+ * It works the way JMH does, only by hand: each benchmark is run for a number of
+ * warm-up iterations that are thrown away and then for a number of measured
+ * iterations, each of which times a fixed number of operations. What it reports is
+ * the mean time per operation over the measured iterations and their standard
+ * deviation. Every result is added into a sink that is printed at the end, so the
+ * JIT cannot decide that the work is not needed.
+ *
+ * The arithmetic does not depend on anything, so it is only run once. calculatePopularity
+ * and the turn stats depend on the cast size. A statement depends on the cast size and
+ * on how long the history book is, because setSuspiciousness walks everything the
+ * listener has heard before from the same source about the same predicate. For those,
+ * every iteration starts from a freshly played game whose history book has just reached
+ * the required length, and replays statements picked at random from that history, so
+ * that each one lands on testimony of a realistic length. An iteration adds at most a
+ * tenth as many statements again, and setting up the game is not timed.
+ *
+ * sumColumns and the turn stats go through ArrayKernels; run with
+ * --add-modules jdk.incubator.vector to time them with the Vector API.
+ */
+class ModelBenchmark {
+	static final int cWarmupIterations=5;
+	static final int cMeasuredIterations=10;
+	static final int cInputs=1<<12;	// a power of two, so inputs can be picked with a mask
+
+	static double sink;	// where every result goes
+// ************************************************************
+	// One thing to be timed. setUp() is not timed; run() must do exactly cOps operations.
+	static abstract class Trial {
+		int cOps;
+		void setUp() { }
+		abstract double run();
+	}
+// ************************************************************
+	static void main(String args[]) {
+		int[] castSizes={6, 25, 100};
+		int[] historyLengths={1000, 10000, 100000};
+		for (int i=0; (i<args.length); ++i) {
+			String[] option=args[i].split("=",2);
+			if ((option.length==2)&&option[0].equals("castSize")) castSizes=parseList(option[1]);
+			else if ((option.length==2)&&option[0].equals("history")) historyLengths=parseList(option[1]);
+			else {
+				System.err.println("usage: model [castSize=N,N,...] [history=N,N,...]");
+				System.exit(1);
+			}
+		}
+
+		System.out.println("Benchmark                  castSize  history  Cnt         Score         Error  Units");
+		final GossipEngine math=GossipBenchmark.newEngine(GossipEngine.maxCharacters, 1);
+		final double[] bounded=new double[cInputs];
+		final double[] unbounded=new double[cInputs];
+		final int[] levels=new int[cInputs];
+		Random rand=new Random(GossipBenchmark.seed);
+		for (int i=0; (i<cInputs); ++i) {
+			bounded[i]=1.98*rand.nextDouble()-0.99;
+			unbounded[i]=math.boundedInverseTransform(bounded[i]);
+			levels[i]=rand.nextInt(GossipEngine.cAffinityLevels);
+		}
+		final int cMathOps=1<<22;
+
+		measure("bSum", -1, -1, new Trial() {
+			{ cOps=cMathOps; }
+			double run() {
+				double sum=0;
+				for (int i=0; (i<cOps); ++i)
+					sum+=math.bSum(bounded[i&(cInputs-1)], bounded[(i+1)&(cInputs-1)]);
+				return sum;
+			}
+		});
+		measure("boundedTransform", -1, -1, new Trial() {
+			{ cOps=cMathOps; }
+			double run() {
+				double sum=0;
+				for (int i=0; (i<cOps); ++i)
+					sum+=math.boundedTransform(unbounded[i&(cInputs-1)]);
+				return sum;
+			}
+		});
+		measure("boundedInverseTransform", -1, -1, new Trial() {
+			{ cOps=cMathOps; }
+			double run() {
+				double sum=0;
+				for (int i=0; (i<cOps); ++i)
+					sum+=math.boundedInverseTransform(bounded[i&(cInputs-1)]);
+				return sum;
+			}
+		});
+		measure("blend", -1, -1, new Trial() {
+			{ cOps=cMathOps; }
+			double run() {
+				double sum=0;
+				for (int i=0; (i<cOps); ++i)
+					sum+=math.blend(bounded[i&(cInputs-1)], bounded[(i+1)&(cInputs-1)], bounded[(i+2)&(cInputs-1)]);
+				return sum;
+			}
+		});
+		measure("integerToBounded", -1, -1, new Trial() {
+			{ cOps=cMathOps; }
+			double run() {
+				double sum=0;
+				for (int i=0; (i<cOps); ++i)
+					sum+=math.integerToBounded(levels[i&(cInputs-1)]);
+				return sum;
+			}
+		});
+		measure("boundedToInteger", -1, -1, new Trial() {
+			{ cOps=cMathOps; }
+			double run() {
+				double sum=0;
+				for (int i=0; (i<cOps); ++i)
+					sum+=GossipEngine.boundedToInteger(bounded[i&(cInputs-1)]);
+				return sum;
+			}
+		});
+
+		for (int c=0; (c<castSizes.length); ++c) {
+			final int cCast=castSizes[c];
+			// a few turns in, so that the affinities are not all where they started
+			final GossipEngine engine=GossipBenchmark.newEngine(cCast, 1);
+			for (int i=0; (i<3); ++i)
+				engine.stepTurn();
+			// recording a turn's popularity from the running column sums
+			measure("calculatePopularity", cCast, -1, new Trial() {
+				{ cOps=Math.max(1,(1<<22)/cCast); }
+				double run() {
+					for (int i=0; (i<cOps); ++i)
+						engine.calculatePopularity();
+					return engine.popularity.get(0, engine.iTurn);
+				}
+			});
+			// adding the column sums up from scratch, as calculatePopularity used to every turn
+			measure("sumColumns", cCast, -1, new Trial() {
+				{ cOps=Math.max(1,(1<<22)/(cCast*cCast)); }
+				double run() {
+					for (int i=0; (i<cOps); ++i)
+						engine.sumColumns();
+					return engine.currentPopularity(0);
+				}
+			});
+			measure("turnStats", cCast, -1, new Trial() {
+				{ cOps=Math.max(1,(1<<24)/(cCast*cCast*cCast)); }
+				double run() {
+					double sum=0;
+					for (int i=0; (i<cOps); ++i)
+						sum+=engine.turnStats()[0];
+					return sum;
+				}
+			});
+		}
+
+		for (int c=0; (c<castSizes.length); ++c) {
+			for (int h=0; (h<historyLengths.length); ++h)
+				measure("statement", castSizes[c], historyLengths[h], new StatementTrial(castSizes[c], historyLengths[h]));
+		}
+		System.out.println("(sink "+sink+"; row sums "+ArrayKernels.kernels.describe()+")");
+	}
+// ************************************************************
+	// Replays statements from the history of a game that has been played up to cHistory statements.
+	static class StatementTrial extends Trial {
+		final int cCast, cHistory;
+		GossipEngine engine;
+		long[] replay;
+		// ------------------------------------------------------------
+		StatementTrial(int tcCast, int tcHistory) {
+			cCast=tcCast;
+			cHistory=tcHistory;
+			cOps=Math.max(100,cHistory/10);
+			replay=new long[cOps];
+		}
+		// ------------------------------------------------------------
+		void setUp() {
+			engine=GossipBenchmark.newEngine(cCast, 1);
+			while (engine.historyBook.size()<cHistory)
+				engine.stepCall();
+			engine.reserveHistory(cOps);
+			Random rand=new Random(GossipBenchmark.seed);
+			for (int i=0; (i<cOps); ++i)
+				replay[i]=engine.historyBook.get(rand.nextInt(engine.historyBook.size()));
+		}
+		// ------------------------------------------------------------
+		double run() {
+			for (int i=0; (i<cOps); ++i) {
+				long entry=replay[i];
+				int iSpeaker=HistoryBook.speaker(entry);
+				int iSource=HistoryBook.source(entry);
+				if (iSource==iSpeaker)
+					engine.declareAffinity(HistoryBook.value(entry), iSpeaker, HistoryBook.listener(entry), HistoryBook.predicate(entry));
+				else
+					engine.declareIndirectAffinity(HistoryBook.value(entry), iSource, iSpeaker, HistoryBook.listener(entry), HistoryBook.predicate(entry));
+			}
+			return engine.iLikeWhatIHear;
+		}
+		// ------------------------------------------------------------
+	}
+// ************************************************************
+	// Runs the trial and prints a line of results; a parameter of -1 does not apply.
+	static void measure(String name, int cCast, int cHistory, Trial trial) {
+		for (int i=0; (i<cWarmupIterations); ++i) {
+			trial.setUp();
+			sink+=trial.run();
+		}
+		double[] nanosPerOp=new double[cMeasuredIterations];
+		for (int i=0; (i<cMeasuredIterations); ++i) {
+			trial.setUp();
+			long start=System.nanoTime();
+			sink+=trial.run();
+			nanosPerOp[i]=(double)(System.nanoTime()-start)/trial.cOps;
+		}
+		double mean=0;
+		for (int i=0; (i<cMeasuredIterations); ++i)
+			mean+=nanosPerOp[i]/cMeasuredIterations;
+		double variance=0;
+		for (int i=0; (i<cMeasuredIterations); ++i)
+			variance+=(nanosPerOp[i]-mean)*(nanosPerOp[i]-mean)/(cMeasuredIterations-1);
+		System.out.println(String.format("%-26s %8s %8s %4d %13.3f +- %11.3f  ns/op", name,
+				(cCast<0) ? "-" : Integer.toString(cCast), (cHistory<0) ? "-" : Integer.toString(cHistory),
+				cMeasuredIterations, mean, Math.sqrt(variance)));
+	}
+// ************************************************************
+	private static int[] parseList(String list) {
+		String[] items=list.split(",");
+		int[] values=new int[items.length];
+		for (int i=0; (i<items.length); ++i)
+			values[i]=Integer.parseInt(items[i]);
+		return values;
+	}
+// ************************************************************
+}
@@ -0,0 +1,72 @@
+package Gossip;
+
+import java.nio.DoubleBuffer;
+
+/*
+ * Where the engine keeps perceivedAffinity: the perceived affinity of the second
+ * character for the third, as perceived by the first. That is cCast-cubed Bounded
+ * Numbers, which is nothing for the six characters on the screen and a great deal
+ * for a big simulated cast, so there is more than one way to store them.
+ *
+ *   HeapPerceptions stores exact doubles on the Java heap; this is what the game uses.
+ *   QuantizedPerceptions stores 16- or 8-bit values outside the heap.
+ */
+abstract class Perceptions {
+	final int cCast;
+// ************************************************************
+	Perceptions(int tcCast) {
+		cCast=tcCast;
+	}
+// ************************************************************
+	abstract double get(int iPerceiver, int iFromCharacter, int iToCharacter);
+// ************************************************************
+	abstract void set(int iPerceiver, int iFromCharacter, int iToCharacter, double value);
+// ************************************************************
+	// The most a value can change between set() and get(); zero for exact storage.
+	abstract double errorBound();
+// ************************************************************
+	// an independent copy, for an engine copied to look ahead with
+	abstract Perceptions copy();
+// ------------------------------------------------------------
+	// Makes this the same as from, which has the same cast, without allocating.
+	// Storage that can copy whole blocks at a time should.
+	void copyFrom(Perceptions from) {
+		for (int i=0; (i<cCast); ++i) {
+			for (int j=0; (j<cCast); ++j) {
+				for (int k=0; (k<cCast); ++k)
+					set(i,j,k,from.get(i,j,k));
+			}
+		}
+	}
+// ************************************************************
+	// The sum over every k<cCharacters except iFromCharacter of the square of
+	// get(iPerceiver,iFromCharacter,k)-truth[iTruth+k]: how far off the perceiver is
+	// about everybody iFromCharacter likes, for the turn stats.
+	double squaredDeviance(int iPerceiver, int iFromCharacter, double[] truth, int iTruth, int cCharacters) {
+		double sum=0;
+		for (int k=0; (k<cCharacters); ++k) {
+			if (k!=iFromCharacter) {
+				double difference=get(iPerceiver,iFromCharacter,k)-truth[iTruth+k];
+				sum+=difference*difference;
+			}
+		}
+		return sum;
+	}
+// ************************************************************
+	// Everything one perceiver perceives, [from][to], copied into a GameSnapshot
+	// and back out of one. Storage that can copy whole rows at a time should.
+	void save(int iPerceiver, DoubleBuffer to) {
+		for (int j=0; (j<cCast); ++j) {
+			for (int k=0; (k<cCast); ++k)
+				to.put(get(iPerceiver,j,k));
+		}
+	}
+	// ------------------------------------------------------------
+	void load(int iPerceiver, DoubleBuffer from) {
+		for (int j=0; (j<cCast); ++j) {
+			for (int k=0; (k<cCast); ++k)
+				set(iPerceiver,j,k,from.get());
+		}
+	}
+// ************************************************************
+}
@@ -0,0 +1,93 @@
+package Gossip;
+
+import java.nio.DoubleBuffer;
+import java.util.Arrays;
+
+/*
+ * Everybody's popularity at the end of every turn so far, for as many turns as a game
+ * or a simulation runs. It used to be a double[cCast][10] that was copied into
+ * arrays twice the length whenever a game went on longer; now it is one growable
+ * array of doubles, a row of cCast per turn:
+ *
+ *     values[iTurn*cCast+i] is the popularity of i at the end of turn iTurn
+ *
+ * so recording a turn writes one run of consecutive doubles, and the whole series can
+ * be saved and loaded as a single block (see GameSnapshot). reserve() makes room ahead
+ * of time, so that recording a turn allocates nothing.
+ *
+ * A turn is recorded over whatever was there, and everything after it is forgotten,
+ * so the series always ends at the turn the game is on; a new game starts it again
+ * at turn 0.
+ */
+class PopularitySeries {
+	private final int cCast;
+	private double[] values;
+	private int cTurns;
+// ************************************************************
+	PopularitySeries(int tcCast) {
+		cCast=tcCast;
+		values=new double[10*cCast];
+	}
+// ************************************************************
+	// how many turns have been recorded: turns 0 to turns()-1
+	int turns() {
+		return cTurns;
+	}
+// ************************************************************
+	double get(int i, int iTurn) {
+		return values[iTurn*cCast+i];
+	}
+// ************************************************************
+	// Records turn iTurn: sums[i]/divisor for the first cCharacters, zero for the rest.
+	void record(int iTurn, double[] sums, int cCharacters, double divisor) {
+		reserve(iTurn+1);
+		int iRow=iTurn*cCast;
+		for (int i=0; (i<cCharacters); ++i)
+			values[iRow+i]=sums[i]/divisor;
+		Arrays.fill(values, iRow+cCharacters, iRow+cCast, 0);
+		cTurns=iTurn+1;
+	}
+// ************************************************************
+	// Makes room for tcTurns turns in all, at least doubling whenever it grows.
+	void reserve(int tcTurns) {
+		if ((long)tcTurns*cCast>values.length)
+			values=Arrays.copyOf(values, (int)Math.min(Integer.MAX_VALUE-8, Math.max(2L*values.length, (long)tcTurns*cCast)));
+	}
+// ************************************************************
+	// an independent copy, for an engine copied to look ahead with
+	PopularitySeries copy() {
+		PopularitySeries copy=new PopularitySeries(cCast);
+		copy.copyFrom(this);
+		return copy;
+	}
+// ------------------------------------------------------------
+	// makes this the same as from, which has the same cast, reusing the array if it is big enough
+	void copyFrom(PopularitySeries from) {
+		reserve(from.cTurns);
+		System.arraycopy(from.values, 0, values, 0, from.cTurns*cCast);
+		cTurns=from.cTurns;
+	}
+// ************************************************************
+	// copies every turn into a GameSnapshot
+	void save(DoubleBuffer to) {
+		to.put(values, 0, cTurns*cCast);
+	}
+// ------------------------------------------------------------
+	void load(DoubleBuffer from, int tcTurns) {
+		reserve(tcTurns);
+		from.get(values, 0, tcTurns*cCast);
+		cTurns=tcTurns;
+	}
+// ------------------------------------------------------------
+	// The way version 1 snapshots kept it: a row of cStored turns for each character,
+	// of which the first tcTurns had been recorded.
+	void loadByCharacter(DoubleBuffer from, int cStored, int tcTurns) {
+		reserve(cStored);
+		for (int i=0; (i<cCast); ++i) {
+			for (int t=0; (t<cStored); ++t)
+				values[t*cCast+i]=from.get();
+		}
+		cTurns=Math.min(cStored,tcTurns);
+	}
+// ************************************************************
+}
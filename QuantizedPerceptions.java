@@ -0,0 +1,143 @@
+package Gossip;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/*
+ * Perceived affinities squeezed into 16 or 8 bits apiece and kept outside the Java heap,
+ * either in direct memory or in a memory-mapped file. A cast of 1000 needs a billion of
+ * these: 8 GB of heap as doubles, 2 GB at 16 bits, 1 GB at 8 bits.
+ *
+ * Perceived affinities are Bounded Numbers, so they always lie in [-1, 1]. A value v is
+ * stored as the integer q=round(v*scale), where scale=2^(bits-1)-1 (32767 or 127), and
+ * read back as q/scale. Rounding to the nearest step means a value that is read back
+ * is never more than half a step away from the value that was stored:
+ *
+ *     16 bits:  |error| <= 0.5/32767 = 1.53e-5
+ *      8 bits:  |error| <= 0.5/127   = 3.94e-3
+ *
+ * Statements are made at one of nine affinity levels, each 2/9 wide, so at 16 bits a
+ * value can only land on the other side of a level boundary if it was within 1.53e-5
+ * of it already. At 8 bits that happens noticeably more often. Either way, a game played
+ * with quantized perceptions will drift away from the same game played with doubles as
+ * those small differences feed back into later statements; GossipBenchmark quantization
+ * measures both the per-value error and the drift.
+ *
+ * Conceptually this is one segment of cCast^3 values laid out perceiver by perceiver.
+ * A ByteBuffer can only be indexed with an int, so the segment is cut into chunks of
+ * at most 1 GB, each holding a whole number of perceivers. Direct memory is limited by
+ * -XX:MaxDirectMemorySize (by default the same as the maximum heap); a mapped file is not.
+ */
+class QuantizedPerceptions extends Perceptions {
+	private static final long maxChunkBytes=1L<<30;
+
+	private final int cBytes;			// 2 or 1
+	private final double scale;		// 32767 or 127
+	private final int cPerceiversPerChunk;
+	private final long perceiverStride;	// values per perceiver: cCast squared
+	private final ByteBuffer[] chunks;
+// ************************************************************
+	// If backingFile is null the values live in direct memory; otherwise they are
+	// mapped from that file, which is created or overwritten as needed.
+	QuantizedPerceptions(int tcCast, int cBits, File backingFile) throws IOException {
+		super(tcCast);
+		if ((cBits!=16)&&(cBits!=8))
+			throw new IllegalArgumentException("perceptions can be quantized to 16 or 8 bits, not "+cBits);
+		cBytes=cBits/8;
+		scale=(1<<(cBits-1))-1;
+		perceiverStride=(long)tcCast*tcCast;
+		long perceiverBytes=perceiverStride*cBytes;
+		if (perceiverBytes>maxChunkBytes)
+			throw new IllegalArgumentException("a cast of "+tcCast+" is too big to quantize");
+		cPerceiversPerChunk=(int)Math.min(tcCast,maxChunkBytes/perceiverBytes);
+		int cChunks=(tcCast+cPerceiversPerChunk-1)/cPerceiversPerChunk;
+		chunks=new ByteBuffer[cChunks];
+
+		RandomAccessFile file=null;
+		try {
+			if (backingFile!=null) {
+				file=new RandomAccessFile(backingFile,"rw");
+				file.setLength(perceiverBytes*tcCast);
+			}
+			for (int i=0; (i<cChunks); ++i) {
+				int cPerceivers=Math.min(cPerceiversPerChunk,tcCast-i*cPerceiversPerChunk);
+				long chunkBytes=perceiverBytes*cPerceivers;
+				if (file==null)
+					chunks[i]=ByteBuffer.allocateDirect((int)chunkBytes);
+				else
+					chunks[i]=file.getChannel().map(FileChannel.MapMode.READ_WRITE,i*perceiverBytes*cPerceiversPerChunk,chunkBytes);
+				chunks[i].order(ByteOrder.nativeOrder());
+			}
+		}
+		finally {
+			// the mappings stay valid after the file is closed
+			if (file!=null)
+				file.close();
+		}
+	}
+// ************************************************************
+	private int offset(int iPerceiver, int iFromCharacter, int iToCharacter) {
+		long i=(iPerceiver%cPerceiversPerChunk)*perceiverStride+(long)iFromCharacter*cCast+iToCharacter;
+		return (int)(i*cBytes);
+	}
+// ************************************************************
+	double get(int iPerceiver, int iFromCharacter, int iToCharacter) {
+		ByteBuffer chunk=chunks[iPerceiver/cPerceiversPerChunk];
+		int iOffset=offset(iPerceiver,iFromCharacter,iToCharacter);
+		if (cBytes==2)
+			return chunk.getShort(iOffset)/scale;
+		else
+			return chunk.get(iOffset)/scale;
+	}
+// ************************************************************
+	void set(int iPerceiver, int iFromCharacter, int iToCharacter, double value) {
+		// Bounded Numbers never leave [-1, 1], but clamp anyway rather than wrap around
+		if (value>1) value=1;
+		if (value<-1) value=-1;
+		long q=Math.round(value*scale);
+		ByteBuffer chunk=chunks[iPerceiver/cPerceiversPerChunk];
+		int iOffset=offset(iPerceiver,iFromCharacter,iToCharacter);
+		if (cBytes==2)
+			chunk.putShort(iOffset,(short)q);
+		else
+			chunk.put(iOffset,(byte)q);
+	}
+// ************************************************************
+	double errorBound() {
+		return 0.5/scale;
+	}
+// ************************************************************
+	// The copy is always in direct memory, whatever this one is in.
+	Perceptions copy() {
+		QuantizedPerceptions copy;
+		try {
+			copy=new QuantizedPerceptions(cCast, 8*cBytes, null);
+		}
+		catch (IOException e) { // only a backing file can fail, and there isn't one
+			throw new UncheckedIOException(e);
+		}
+		copy.copyFrom(this);
+		return copy;
+	}
+// ------------------------------------------------------------
+	// chunk by chunk, if from is stored the same way
+	void copyFrom(Perceptions from) {
+		if (!(from instanceof QuantizedPerceptions)||(((QuantizedPerceptions)from).cBytes!=cBytes)) {
+			super.copyFrom(from);
+			return;
+		}
+		ByteBuffer[] fromChunks=((QuantizedPerceptions)from).chunks;
+		for (int i=0; (i<chunks.length); ++i) {
+			ByteBuffer chunk=fromChunks[i].duplicate();
+			chunk.clear();
+			chunks[i].put(chunk);
+			chunks[i].clear();
+		}
+	}
+// ************************************************************
+}
@@ -0,0 +1,62 @@
+package Gossip;
+
+import java.util.Arrays;
+
+/*
+ * Remembers where in the history book each (speaker, listener, predicate) statement
+ * was last made, and where each speaker last said anything at all to each listener.
+ * howRecent used to find these by walking the history book backwards; now it
+ * just looks them up.
+ *
+ * Both kinds of key live in one LongKeyTable. The "anything at all" key is stored
+ * with the predicate set to anybody, which is why the indices are masked: anybody
+ * (-1) becomes the all-ones pattern that no real character index can reach.
+ */
+class RecencyTable {
+	private static final int cIndexBits=21;
+	private static final long indexMask=(1L<<cIndexBits)-1;
+
+	private LongKeyTable keys=new LongKeyTable();
+	private int[] lastSeen=new int[64];	// history book position of the latest statement with each key
+// ************************************************************
+	private static long key(int tiSpeaker, int tiListener, int tiPredicate) {
+		return ((tiSpeaker&indexMask)<<(2*cIndexBits))|((tiListener&indexMask)<<cIndexBits)|(tiPredicate&indexMask);
+	}
+// ************************************************************
+	// The latest position of a matching statement, or -1 if there is none.
+	// A predicate of anybody matches any predicate.
+	int lastSeen(int tiSpeaker, int tiListener, int tiPredicate) {
+		int iKey=keys.find(key(tiSpeaker,tiListener,tiPredicate));
+		if (iKey<0)
+			return -1;
+		return lastSeen[iKey];
+	}
+// ************************************************************
+	void record(int tiSpeaker, int tiListener, int tiPredicate, int iHistory) {
+		put(key(tiSpeaker,tiListener,tiPredicate),iHistory);
+		put(key(tiSpeaker,tiListener,GossipEngine.anybody),iHistory);
+	}
+// ************************************************************
+	private void put(long tKey, int iHistory) {
+		int iKey=keys.add(tKey);
+		if (iKey==lastSeen.length)
+			lastSeen=Arrays.copyOf(lastSeen, 2*iKey);
+		lastSeen[iKey]=iHistory;
+	}
+// ************************************************************
+	// an independent copy, for an engine copied to look ahead with
+	RecencyTable copy() {
+		RecencyTable copy=new RecencyTable();
+		copy.copyFrom(this);
+		return copy;
+	}
+// ------------------------------------------------------------
+	// makes this the same as from, reusing lastSeen[] if it is big enough
+	void copyFrom(RecencyTable from) {
+		keys.copyFrom(from.keys);
+		if (lastSeen.length<keys.size())
+			lastSeen=new int[from.lastSeen.length];
+		System.arraycopy(from.lastSeen, 0, lastSeen, 0, keys.size());
+	}
+// ************************************************************
+}
@@ -0,0 +1,160 @@
+package Gossip;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.lang.management.ManagementFactory;
+
+/*
+ * Draws every display, and every phase of the main display, into an off-screen
+ * image over and over and reports what a frame costs in time and in allocation.
+ *
+ *   java Gossip.GossipBenchmark render [frames=500]
+ *
+ * It runs with java.awt.headless set, so it needs no screen and can run anywhere
+ * the tests can. The game is built without a window (see Gossip(boolean)) and set
+ * up the way it would be when each display is showing: the right buttons, and a
+ * game three turns in, with the player talking to one character about another
+ * (or, for the NPC phases, being called).
+ *
+ * Each combination is drawn a few hundred times to warm up and then timed over
+ * the given number of frames. The same Graphics2D is used for every frame of a
+ * combination, so what is measured is paint() itself. Allocation comes from the
+ * JVM's per-thread counter and includes anything paint() reads from disk.
+ *
+ * The images are read from res/ under the working directory, as in the game. If
+ * they are not there, paint() draws everything but the images and the numbers
+ * will be correspondingly low; a warning is printed. The last line says how many
+ * images were read from disk during all that drawing, which should be none.
+ */
+class RenderBenchmark {
+	static final int cWarmupFrames=200;
+
+	static final String[] phaseNames={"playerSelectsCallee", "ring", "playerSelectsPredicate",
+			"playerDeclaresDirectAffinity", "reactionAnimation1", "npcRespondsDirectAffinity",
+			"playerDeclaresIndirectAffinity", "reactionAnimation2", "npcRespondsIndirectAffinity",
+			"playerHangsUp", "npcTurn", "npcCallsPlayer", "npcDeclaresDirectAffinity",
+			"playerRespondsDirectAffinity", "reactionAnimation3", "npcDeclaresIndirectAffinity",
+			"playerRespondsIndirectAffinity", "reactionAnimation4", "npcHangsUp"};
+// ************************************************************
+	static void main(String args[]) {
+		System.setProperty("java.awt.headless", "true");
+		int cFrames=500;
+		for (int i=0; (i<args.length); ++i) {
+			String[] option=args[i].split("=",2);
+			if ((option.length==2)&&option[0].equals("frames"))
+				cFrames=Integer.parseInt(option[1]);
+			else {
+				System.err.println("usage: render [frames=N]");
+				System.exit(1);
+			}
+		}
+		if (!new File(System.getProperty("user.dir")+"/res").isDirectory())
+			System.out.println("warning: no res/ directory here, so no images will be drawn");
+
+		Gossip game=newGame(new Gossip(true));
+
+		int cReadsBefore=game.assets.cReads;
+		BufferedImage image=new BufferedImage(Gossip.frameWidth, Gossip.frameHeight, BufferedImage.TYPE_INT_RGB);
+		System.out.println("display     phase                            us/frame  bytes/frame");
+		for (int iDisplay=0; (iDisplay<Gossip.displayNames.length); ++iDisplay) {
+			if (iDisplay==Gossip.mainDisplay) {
+				for (int iPhase=0; (iPhase<phaseNames.length); ++iPhase)
+					measure(game, image, iDisplay, iPhase, cFrames);
+			}
+			else
+				measure(game, image, iDisplay, Gossip.playerSelectsCallee, cFrames);
+		}
+		System.out.println("images read from disk while drawing: "+(game.assets.cReads-cReadsBefore));
+	}
+// ************************************************************
+	// Sets the game up the way every frame here is drawn: everybody playing, three
+	// turns in, and the player in the middle of a call. StartupProfile uses it too.
+	static Gossip newGame(Gossip game) {
+		GossipEngine engine=game.engine;
+		engine.newGame();
+		engine.cCharacters=Gossip.maxCharacters; // everybody, so that every face is drawn
+		engine.startGame();
+		game.loadFaces();
+		game.awaitLoading(); // the images are read on loader threads; don't time that
+		// let everybody play a few turns, so that the spokes are not all the same colour
+		engine.player=GossipEngine.nobody;
+		for (int i=0; (i<3); ++i)
+			engine.stepTurn();
+		engine.player=0;
+		engine.iLikeWhatIHear=1;
+		engine.iSuspect=1;
+		game.buttonValue=6;
+		game.iBackgroundCharacter=2;
+		return game;
+	}
+// ************************************************************
+	// Puts the game into the given display and phase, as far as paint() can tell.
+	static void setUp(Gossip game, int iDisplay, int iPhase) {
+		GossipEngine engine=game.engine;
+		game.iDisplay=iDisplay;
+		game.iPhase=iPhase;
+		game.subPhase=0;
+		if (iPhase<Gossip.npcTurn) { // the player made the call
+			engine.caller=engine.player;
+			engine.callee=2;
+			engine.predicate=4;
+		}
+		else { // an NPC called the player
+			engine.caller=3;
+			engine.callee=engine.player;
+			engine.predicate=5;
+		}
+		switch (iDisplay) {
+			case Gossip.mainDisplay: {
+				game.showOnlyButtons(Gossip.upArrow, Gossip.downArrow, Gossip.enter, Gossip.rules, Gossip.tips);
+				break;
+			}
+			case Gossip.rulesDisplay: case Gossip.backgroundDisplay: {
+				game.showOnlyButtons(Gossip.rightArrow, Gossip.leftArrow);
+				break;
+			}
+			case Gossip.titleDisplay: {
+				game.showOnlyButtons();
+				break;
+			}
+			case Gossip.endGameDisplay: {
+				game.showOnlyButtons(Gossip.exit, Gossip.playAgain);
+				break;
+			}
+			case Gossip.optionsDisplay: {
+				game.showOnlyButtons(Gossip._4Button, Gossip._5Button, Gossip._6Button,
+						Gossip.easyButton, Gossip.mediumButton, Gossip.hardButton, Gossip.leaveOptions);
+				break;
+			}
+			case Gossip.tipsDisplay: {
+				game.showOnlyButtons(Gossip.leftArrow);
+				break;
+			}
+		}
+		game.publishView();
+	}
+// ************************************************************
+	static void measure(Gossip game, BufferedImage image, int iDisplay, int iPhase, int cFrames) {
+		com.sun.management.ThreadMXBean threads=(com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+		long iThread=Thread.currentThread().getId();
+
+		setUp(game, iDisplay, iPhase);
+		Graphics2D g=image.createGraphics();
+		for (int i=0; (i<cWarmupFrames); ++i)
+			game.paint(g);
+
+		long before=threads.getThreadAllocatedBytes(iThread);
+		long start=System.nanoTime();
+		for (int i=0; (i<cFrames); ++i)
+			game.paint(g);
+		long elapsed=System.nanoTime()-start;
+		long allocated=threads.getThreadAllocatedBytes(iThread)-before;
+		g.dispose();
+
+		System.out.println(String.format("%-11s %-30s %10.1f %12d", Gossip.displayNames[iDisplay],
+				(iDisplay==Gossip.mainDisplay) ? phaseNames[iPhase] : "-",
+				elapsed/1000.0/cFrames, allocated/cFrames));
+	}
+// ************************************************************
+}
@@ -0,0 +1,188 @@
+package Gossip;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/*
+ * Everything that happens to a GossipEngine, written to a file as it happens, so
+ * that the game can be played back afterwards (see Replayer) and come out exactly
+ * the same: every statement, every NPC's choice of whom to call and what about,
+ * the player's choices, and where the random numbers were at the start of each game.
+ * The frame adds its phase changes too, so that the log also says what was on the
+ * screen when.
+ *
+ * Nothing is ever written over. Each time a log is opened it appends a header that
+ * describes the cast, so one file can hold any number of sessions, each of any number
+ * of games. Every game in a log starts in the log: the frame does not log a game it
+ * carries on from a GameSnapshot, whose earlier statements the log would not have.
+ *
+ * The log is binary and compact; a statement takes 8 or 10 bytes. Records are put
+ * into a 64 KB direct buffer and written to the FileChannel when it fills up, when
+ * flush() is called (the frame does that on every phase change) and on close().
+ * Logging allocates nothing per record.
+ *
+ * Every record is one byte of type and then its fields, big-endian. Characters are
+ * shorts (the history book limits the cast to 32767), with -1 for nobody.
+ *
+ *   header        int magic, short version, short player, int cCast,
+ *                 then for each member: short name length, name (UTF-8), byte male,
+ *                 double dishonest, double gullible, double vain
+ *   newGame       long random state before the game is set up
+ *   startGame     short cCharacters, byte difficultyLevel, long random state
+ *   plan          short caller, short callee before, short callee, short predicate
+ *   direct        short speaker, short listener, short predicate, byte value
+ *   indirect      short source, short speaker, short listener, short predicate, byte value
+ *   nextCaller    short caller
+ *   calleeChosen  short callee		(by the player)
+ *   predicateChosen  short predicate	(by the player)
+ *   phase         byte iPhase
+ *   lookahead     short caller, short callee, short predicate
+ *                 (a call planned by a LookaheadPlanner, which depends on how much
+ *                 it got done in its time, so it is replayed as it was made)
+ *
+ * If the log cannot be written that is reported once on System.err and the game
+ * carries on without it.
+ */
+class ReplayLog {
+	static final int magic=0x47535250;	// "GSRP"
+	static final short version=2;	// 2 added lookahead; version 1 logs are still read
+
+	static final byte header=0;
+	static final byte newGame=1;
+	static final byte startGame=2;
+	static final byte plan=3;
+	static final byte direct=4;
+	static final byte indirect=5;
+	static final byte nextCaller=6;
+	static final byte calleeChosen=7;
+	static final byte predicateChosen=8;
+	static final byte phase=9;
+	static final byte lookahead=10;
+
+	static final int cBufferBytes=1<<16;
+
+	private final File file;
+	private FileChannel channel;	// null once something has gone wrong
+	private final ByteBuffer buffer=ByteBuffer.allocateDirect(cBufferBytes);
+// ************************************************************
+	ReplayLog(File tFile) throws IOException {
+		file=tFile;
+		channel=FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+	}
+// ************************************************************
+	void header(int player, CastMember[] cast) {
+		if (!room(1+4+2+2+4))
+			return;
+		buffer.put(header).putInt(magic).putShort(version).putShort((short)player).putInt(cast.length);
+		for (int i=0; (i<cast.length); ++i) {
+			byte[] name=cast[i].name.getBytes(StandardCharsets.UTF_8);
+			if (!room(2+name.length+1+3*8))
+				return;
+			buffer.putShort((short)name.length).put(name).put((byte)(cast[i].fMale ? 1 : 0));
+			buffer.putDouble(cast[i].dishonest).putDouble(cast[i].gullible).putDouble(cast[i].vain);
+		}
+	}
+// ************************************************************
+	void newGame(long randomState) {
+		if (room(1+8))
+			buffer.put(newGame).putLong(randomState);
+	}
+// ************************************************************
+	void startGame(int cCharacters, int difficultyLevel, long randomState) {
+		if (room(1+2+1+8))
+			buffer.put(startGame).putShort((short)cCharacters).put((byte)difficultyLevel).putLong(randomState);
+	}
+// ************************************************************
+	void plan(int caller, int calleeBefore, int callee, int predicate) {
+		if (room(1+4*2))
+			buffer.put(plan).putShort((short)caller).putShort((short)calleeBefore).putShort((short)callee).putShort((short)predicate);
+	}
+// ************************************************************
+	void direct(int speaker, int listener, int predicate, int value) {
+		if (room(1+3*2+1))
+			buffer.put(direct).putShort((short)speaker).putShort((short)listener).putShort((short)predicate).put((byte)value);
+	}
+// ************************************************************
+	void indirect(int source, int speaker, int listener, int predicate, int value) {
+		if (room(1+4*2+1))
+			buffer.put(indirect).putShort((short)source).putShort((short)speaker).putShort((short)listener)
+					.putShort((short)predicate).put((byte)value);
+	}
+// ************************************************************
+	void nextCaller(int caller) {
+		if (room(1+2))
+			buffer.put(nextCaller).putShort((short)caller);
+	}
+// ************************************************************
+	void calleeChosen(int callee) {
+		if (room(1+2))
+			buffer.put(calleeChosen).putShort((short)callee);
+	}
+// ************************************************************
+	void predicateChosen(int predicate) {
+		if (room(1+2))
+			buffer.put(predicateChosen).putShort((short)predicate);
+	}
+// ************************************************************
+	void phase(int iPhase) {
+		if (room(1+1))
+			buffer.put(phase).put((byte)iPhase);
+	}
+// ************************************************************
+	void lookahead(int caller, int callee, int predicate) {
+		if (room(1+3*2))
+			buffer.put(lookahead).putShort((short)caller).putShort((short)callee).putShort((short)predicate);
+	}
+// ************************************************************
+	// Makes sure the buffer has room for cBytes more, writing out what it holds if
+	// need be. Returns false if the log has failed and nothing more should be put in.
+	private boolean room(int cBytes) {
+		if (channel==null)
+			return false;
+		if (buffer.remaining()<cBytes)
+			flush();
+		return channel!=null;
+	}
+// ************************************************************
+	// Writes out everything logged so far.
+	void flush() {
+		if (channel==null)
+			return;
+		buffer.flip();
+		try {
+			while (buffer.hasRemaining())
+				channel.write(buffer);
+		}
+		catch (IOException e) {
+			fail(e);
+		}
+		buffer.clear();
+	}
+// ************************************************************
+	void close() {
+		flush();
+		if (channel==null)
+			return;
+		try {
+			channel.close();
+		}
+		catch (IOException e) {
+			fail(e);
+		}
+		channel=null;
+	}
+// ************************************************************
+	private void fail(IOException e) {
+		System.err.println("Gossip: stopped writing the replay log "+file+": "+e);
+		try {
+			channel.close();
+		}
+		catch (IOException ignored) { }
+		channel=null;
+	}
+// ************************************************************
+}
@@ -0,0 +1,170 @@
+package Gossip;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/*
+ * Plays a ReplayLog back into a fresh GossipEngine, as fast as the engine will go:
+ * no frame, no timers, no sounds. The statements and the player's choices are put
+ * back exactly as they were made, and the NPCs' choices of whom to call and what
+ * about are made again from the same random numbers, so affinity, perceivedAffinity,
+ * popularity and the history book all come out exactly as they were in the game.
+ * Each NPC choice is checked against the one in the log; if they ever differ, the
+ * engine has changed since the log was written, and the replay stops there.
+ *
+ *   java Gossip.Gossip replay <log file>
+ *       replays the whole log and says what was in it, how long it took, and how
+ *       popular everybody was at the end of the last game.
+ *
+ * The file is mapped rather than read, so it can be at most 2 GB.
+ */
+class Replayer {
+	GossipEngine engine;	// the engine of the latest session, as the log left it
+	int iPhase=-1;			// the latest phase the frame logged, or -1 if none
+	int cSessions, cGames, cStatements, cChoices;
+// ************************************************************
+	// Replays the whole file.
+	void replay(File file) throws IOException {
+		FileChannel channel=FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		MappedByteBuffer log;
+		try {
+			if (channel.size()>Integer.MAX_VALUE)
+				throw new IOException(file+" is too big to replay");
+			log=channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		finally {
+			channel.close();	// the mapping stays valid
+		}
+		while (log.hasRemaining())
+			replayRecord(file, log);
+	}
+// ************************************************************
+	private void replayRecord(File file, ByteBuffer log) throws IOException {
+		int iRecord=log.position();
+		byte type=log.get();
+		if ((type!=ReplayLog.header)&&(engine==null))
+			throw new IOException(file+" does not start with a replay log header");
+		switch (type) {
+			case ReplayLog.header: {
+				if ((log.getInt()!=ReplayLog.magic)||(log.getShort()>ReplayLog.version))
+					throw new IOException(file+" is not a replay log this version can read");
+				int player=log.getShort();
+				CastMember[] cast=new CastMember[log.getInt()];
+				for (int i=0; (i<cast.length); ++i) {
+					byte[] name=new byte[log.getShort()];
+					log.get(name);
+					boolean fMale=log.get()!=0;
+					cast[i]=new CastMember(new String(name, StandardCharsets.UTF_8), fMale,
+							log.getDouble(), log.getDouble(), log.getDouble());
+				}
+				engine=new GossipEngine(new GossipRandom(0), player, cast, new HeapPerceptions(cast.length));
+				++cSessions;
+				break;
+			}
+			case ReplayLog.newGame: {
+				engine.rand.setState(log.getLong());
+				engine.newGame();
+				++cGames;
+				break;
+			}
+			case ReplayLog.startGame: {
+				engine.cCharacters=log.getShort();
+				engine.difficultyLevel=log.get();
+				engine.rand.setState(log.getLong());
+				engine.startGame();
+				break;
+			}
+			case ReplayLog.plan: {
+				engine.caller=log.getShort();
+				engine.callee=log.getShort();
+				int callee=log.getShort();
+				int predicate=log.getShort();
+				engine.planNPCCall();
+				if ((engine.callee!=callee)||(engine.predicate!=predicate))
+					throw new IOException(file+": at byte "+iRecord+" character "+engine.caller+" called "
+							+engine.callee+" about "+engine.predicate+" instead of "+callee+" about "+predicate);
+				break;
+			}
+			case ReplayLog.lookahead: {
+				engine.caller=log.getShort();
+				engine.callee=log.getShort();
+				engine.predicate=log.getShort();
+				break;
+			}
+			case ReplayLog.direct: {
+				int speaker=log.getShort();
+				int listener=log.getShort();
+				int predicate=log.getShort();
+				engine.declareAffinity(log.get(), speaker, listener, predicate);
+				++cStatements;
+				break;
+			}
+			case ReplayLog.indirect: {
+				int source=log.getShort();
+				int speaker=log.getShort();
+				int listener=log.getShort();
+				int predicate=log.getShort();
+				engine.declareIndirectAffinity(log.get(), source, speaker, listener, predicate);
+				++cStatements;
+				break;
+			}
+			case ReplayLog.nextCaller: {
+				engine.caller=log.getShort();
+				engine.nextCaller();
+				break;
+			}
+			case ReplayLog.calleeChosen: {
+				engine.playerCalls(log.getShort());
+				++cChoices;
+				break;
+			}
+			case ReplayLog.predicateChosen: {
+				engine.playerChoosesPredicate(log.getShort());
+				++cChoices;
+				break;
+			}
+			case ReplayLog.phase: {
+				iPhase=log.get();
+				break;
+			}
+			default:
+				throw new IOException(file+": unknown record "+type+" at byte "+iRecord);
+		}
+	}
+// ************************************************************
+	static void main(String args[]) {
+		if (args.length!=1) {
+			System.err.println("usage: java Gossip.Gossip replay <log file>");
+			System.exit(1);
+		}
+		File file=new File(args[0]);
+		Replayer replayer=new Replayer();
+		long start=System.nanoTime();
+		try {
+			replayer.replay(file);
+		}
+		catch (IOException e) {
+			System.err.println(e.getMessage());
+			System.exit(1);
+		}
+		catch (BufferUnderflowException e) {
+			System.err.println(file+" ends in the middle of a record; replayed up to there");
+		}
+		double seconds=(System.nanoTime()-start)/1e9;
+		System.out.println(String.format("%d sessions, %d games, %d statements, %d player choices, replayed in %.3f s",
+				replayer.cSessions, replayer.cGames, replayer.cStatements, replayer.cChoices, seconds));
+		GossipEngine engine=replayer.engine;
+		if (engine==null)
+			return;
+		System.out.println("turn "+engine.iTurn+" of "+engine.maxTurns+", popularity:");
+		for (int i=0; (i<engine.cCharacters); ++i)
+			System.out.println(String.format("  %-20s %7.4f", engine.cast[i].name, engine.popularity.get(i, engine.iTurn)));
+	}
+// ************************************************************
+}
@@ -0,0 +1,224 @@
+package Gossip;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/*
+ * Plays a whole turn of a headless game with the conversations on several threads,
+ * and comes out with exactly what stepCall() one caller at a time comes to: the same
+ * history book, affinities, perceptions, popularity and random numbers, to the bit.
+ *
+ * That works because a conversation only changes the rows of its caller and callee:
+ * what they feel for everybody and what they perceive. Everything each of them says
+ * is worked out from their own rows, and what each of them makes of what they hear
+ * changes only their own rows. Two conversations with four different people in them
+ * can therefore happen in either order, or at once. The rest of what a conversation
+ * changes is shared, and is handled on either side of the parallel part:
+ *
+ * 1. Plans every call in turn, exactly as stepCall() would, and puts the call's four
+ *    statements in the history book (and its indexes) with their values still to
+ *    come. Choosing whom to call and what about looks only at where statements are in
+ *    the history book, never at what was said, so these are the same choices with the
+ *    same random numbers, and every statement gets the same place in the history
+ *    book, as one call after another would have given them.
+ *
+ * 2. Puts the conversations into levels: each goes one level after the latest one
+ *    before it with the same caller or callee in it. The conversations in a level
+ *    have nobody in common; they are run on a ForkJoinPool, one level after another.
+ *    Each statement fills in its value in the history book and then goes over what
+ *    its listener has heard before, stopping at itself. Everything before it in the
+ *    history book with the same listener is from an earlier level, so that is all
+ *    there, and everything after it is ignored, as it would not have happened yet.
+ *
+ * 3. The column sums behind popularity (see GossipEngine.setAffinity) are the one
+ *    thing every conversation changes. Each conversation collects its changes to them
+ *    as ColumnDeltas, and they are added in afterwards call by call in turn, which is
+ *    the same additions in the same order as one call after another makes. What each
+ *    conversation counts for GossipMetrics is added to the engine's tally there too.
+ *
+ * So the result does not depend on the number of threads or on timing: there is no
+ * other mode. What can be run at once depends on who calls whom; GossipBenchmark
+ * rounds reports how many levels turns take.
+ *
+ * A turn is only played this way when it is the start of a turn of a headless game
+ * with no LookaheadPlanner (which would look at affinities while planning), no replay
+ * log (which has to be written one call after another) and no debugging; otherwise
+ * stepTurn() does what it always did. The engine's iSuspect and iLikeWhatIHear, which
+ * are feedback for the player, are whatever some last statement left them as.
+ */
+class RoundScheduler {
+	final int cThreads;
+	private final ForkJoinPool pool;	// null when there is only the one thread
+
+	// for each call of the turn, by caller
+	private int[] callees=new int[0];
+	private int[] predicates=new int[0];
+	private int[] firstStatements=new int[0];	// where in the history book its four statements are
+	private int[] levels=new int[0];
+	private ColumnDeltas[] deltas=new ColumnDeltas[0];
+	// the latest level with each character in it
+	private int[] latestLevels=new int[0];
+	// the calls of the turn, level by level
+	private int[] byLevel=new int[0];
+	private int[] levelStarts=new int[1];
+
+	int cLevels;	// how many levels the latest turn took
+// ************************************************************
+	// The changes one conversation makes to the column sums, in the order it makes them.
+	static class ColumnDeltas {
+		private int[] columns=new int[64];
+		private double[] amounts=new double[64];
+		private int cDeltas;
+		GossipMetrics.Tally tally;	// what the conversation counts, when there are metrics
+		// ------------------------------------------------------------
+		void add(int column, double amount) {
+			if (cDeltas==columns.length) {
+				columns=Arrays.copyOf(columns, 2*cDeltas);
+				amounts=Arrays.copyOf(amounts, 2*cDeltas);
+			}
+			columns[cDeltas]=column;
+			amounts[cDeltas]=amount;
+			++cDeltas;
+		}
+		// ------------------------------------------------------------
+		void addTo(double[] sums) {
+			for (int i=0; (i<cDeltas); ++i)
+				sums[columns[i]]+=amounts[i];
+			cDeltas=0;
+		}
+	}
+// ************************************************************
+	RoundScheduler(int tcThreads) {
+		cThreads=Math.max(tcThreads,1);
+		pool=(cThreads>1) ? new ForkJoinPool(cThreads) : null;
+	}
+// ************************************************************
+	boolean canPlay(GossipEngine engine) {
+		return (engine.player==GossipEngine.nobody)&&(engine.planner==null)&&(engine.log==null)&&!engine.fDebug
+				&&(engine.caller==0)&&(engine.callee==GossipEngine.nobody)&&!engine.isGameOver();
+	}
+// ************************************************************
+	// Plays one whole turn, which canPlay() must have said it can.
+	void playTurn(GossipEngine engine) {
+		int cCharacters=engine.cCharacters;
+		if (callees.length<cCharacters) {
+			callees=new int[cCharacters];
+			predicates=new int[cCharacters];
+			firstStatements=new int[cCharacters];
+			levels=new int[cCharacters];
+			latestLevels=new int[cCharacters];
+			byLevel=new int[cCharacters];
+			levelStarts=new int[cCharacters+2];
+			deltas=Arrays.copyOf(deltas, cCharacters);
+			for (int k=0; (k<cCharacters); ++k) {
+				if (deltas[k]==null)
+					deltas[k]=new ColumnDeltas();
+			}
+		}
+		if ((engine.tally!=null)&&(deltas[cCharacters-1].tally==null)) {
+			for (int k=0; (k<deltas.length); ++k)
+				deltas[k].tally=new GossipMetrics.Tally();
+		}
+		engine.reserveHistory(4*cCharacters);
+
+		// 1: every call planned, and its statements given their places
+		Arrays.fill(latestLevels, 0, cCharacters, 0);
+		cLevels=0;
+		for (int k=0; (k<cCharacters); ++k) {
+			engine.planNPCCall();
+			int callee=engine.callee;
+			int predicate=engine.predicate;
+			callees[k]=callee;
+			predicates[k]=predicate;
+			firstStatements[k]=engine.recordHistory(k, callee, k, predicate, 0);
+			engine.recordHistory(callee, k, callee, predicate, 0);
+			engine.recordHistory(k, callee, predicate, callee, 0);
+			engine.recordHistory(callee, k, predicate, k, 0);
+			levels[k]=1+Math.max(latestLevels[k], latestLevels[callee]);
+			latestLevels[k]=levels[k];
+			latestLevels[callee]=levels[k];
+			cLevels=Math.max(cLevels, levels[k]);
+			// what nextCaller() does, short of ending the turn
+			engine.callee=GossipEngine.nobody;
+			if (k+1<cCharacters)
+				++engine.caller;
+		}
+
+		// 2: the conversations, a level at a time; within a level, in the order of the calls
+		Arrays.fill(levelStarts, 0, cLevels+2, 0);
+		for (int k=0; (k<cCharacters); ++k)
+			++levelStarts[levels[k]+1];
+		for (int l=1; (l<=cLevels+1); ++l)
+			levelStarts[l]+=levelStarts[l-1];
+		for (int k=0; (k<cCharacters); ++k)
+			byLevel[levelStarts[levels[k]]++]=k;
+		// levelStarts[l] is now where level l+1 starts, which is where level l ends
+		for (int l=1; (l<=cLevels); ++l) {
+			int iStart=levelStarts[l-1];
+			int iEnd=levelStarts[l];
+			if ((pool==null)||(iEnd-iStart==1)) {
+				for (int i=iStart; (i<iEnd); ++i)
+					converse(engine, byLevel[i]);
+			}
+			else
+				pool.invoke(new Level(engine, iStart, iEnd));
+		}
+
+		// 3: the column sums, call by call, and then the end of the turn
+		for (int k=0; (k<cCharacters); ++k) {
+			deltas[k].addTo(engine.columnSums);
+			if (engine.tally!=null)
+				deltas[k].tally.addTo(engine.tally);
+		}
+		engine.nextCaller();
+	}
+// ************************************************************
+	// The four statements of call k, as GossipEngine.runNPCConversation makes them.
+	private void converse(GossipEngine engine, int k) {
+		int callee=callees[k];
+		int predicate=predicates[k];
+		int iHistory=firstStatements[k];
+		ColumnDeltas changes=deltas[k];
+		int iValue=GossipEngine.boundedToInteger(engine.planDirectReport(k, callee, predicate));
+		engine.historyBook.setValue(iHistory, iValue);
+		engine.hearAffinity(iValue, k, callee, predicate, iHistory, changes);
+		iValue=GossipEngine.boundedToInteger(engine.planDirectReport(callee, k, predicate));
+		engine.historyBook.setValue(iHistory+1, iValue);
+		engine.hearAffinity(iValue, callee, k, predicate, iHistory+1, changes);
+		iValue=GossipEngine.boundedToInteger(engine.planIndirectReport(k, callee, predicate));
+		engine.historyBook.setValue(iHistory+2, iValue);
+		engine.hearIndirectAffinity(iValue, predicate, k, callee, callee, iHistory+2, changes);
+		iValue=GossipEngine.boundedToInteger(engine.planIndirectReport(callee, k, predicate));
+		engine.historyBook.setValue(iHistory+3, iValue);
+		engine.hearIndirectAffinity(iValue, predicate, callee, k, k, iHistory+3, changes);
+	}
+// ************************************************************
+	// the calls byLevel[iStart] to byLevel[iEnd-1], split in halves down to single calls
+	private class Level extends RecursiveAction {
+		private static final long serialVersionUID=1L;
+		private final GossipEngine engine;
+		private final int iStart, iEnd;
+		// ------------------------------------------------------------
+		Level(GossipEngine tEngine, int tiStart, int tiEnd) {
+			engine=tEngine;
+			iStart=tiStart;
+			iEnd=tiEnd;
+		}
+		// ------------------------------------------------------------
+		protected void compute() {
+			if (iEnd-iStart==1)
+				converse(engine, byLevel[iStart]);
+			else {
+				int iMiddle=(iStart+iEnd)>>>1;
+				invokeAll(new Level(engine, iStart, iMiddle), new Level(engine, iMiddle, iEnd));
+			}
+		}
+	}
+// ************************************************************
+	void close() {
+		if (pool!=null)
+			pool.shutdown();
+	}
+// ************************************************************
+}
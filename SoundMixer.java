@@ -0,0 +1,232 @@
+package Gossip;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.SourceDataLine;
+
+/*
+ * All of the game's sound goes through here. playSound used to open a new Clip and
+ * decode the WAV file every time a phone rang, and it dropped the previous Clip
+ * without closing it, so every sound cost a decode and leaked a line.
+ *
+ * Now each WAV file is decoded once, the first time it is wanted (or by preload()),
+ * into 16-bit stereo samples at the output rate. A single mixer thread owns the one
+ * output line. It adds up every sound that is playing a block at a time, clips the
+ * sum and writes it out; a looped sound just starts again from its beginning, so it
+ * streams for as long as it is left running.
+ *
+ * play() only puts the sound on a queue for the mixer thread, so it returns at once.
+ * How long a sound then takes to be heard is its start latency: the wait until the
+ * mixer picks it up, plus whatever audio is already queued in the line ahead of it.
+ * That is at most one block plus the line's buffer, about 12 + 46 ms here; the
+ * latency of every sound is measured, and latencyReport() says what it has been.
+ *
+ * If there is no audio device the mixer reports that once and every sound is silent.
+ */
+class SoundMixer implements Runnable {
+	static final float sampleRate=44100;
+	static final int cFramesPerBlock=512;			// about 12 ms of sound
+	static final int cLineBufferFrames=4*cFramesPerBlock;	// about 46 ms queued in the line
+	static final AudioFormat outputFormat=new AudioFormat(sampleRate, 16, 2, true, false);
+
+	private final File directory;
+	private final HashMap<String,short[]> decoded=new HashMap<String,short[]>();	// interleaved left, right
+	private final ConcurrentLinkedQueue<Voice> requests=new ConcurrentLinkedQueue<Voice>();
+	private final ArrayList<Voice> voices=new ArrayList<Voice>();		// only touched by the mixer thread
+	private SourceDataLine line;
+	private volatile boolean fStopLoops;
+
+	// start latency statistics, in nanoseconds
+	private long cStarted, totalLatency, maxLatency;
+// ************************************************************
+	// one playing of one sound
+	private static class Voice {
+		final short[] samples;
+		final boolean fLoop;
+		final long requested;	// System.nanoTime() when play() was called
+		int iNext;			// the next sample to mix
+		boolean fStarted;
+		// ------------------------------------------------------------
+		Voice(short[] tSamples, boolean tfLoop) {
+			samples=tSamples;
+			fLoop=tfLoop;
+			requested=System.nanoTime();
+		}
+		// ------------------------------------------------------------
+	}
+// ************************************************************
+	SoundMixer(File tDirectory) {
+		directory=tDirectory;
+		try {
+			line=AudioSystem.getSourceDataLine(outputFormat);
+			line.open(outputFormat, cLineBufferFrames*outputFormat.getFrameSize());
+			line.start();
+		}
+		catch (Exception e) {
+			System.err.println("Gossip: no sound, because there is no audio output: "+e);
+			line=null;
+			return;
+		}
+		Thread mixer=new Thread(this, "Gossip sound mixer");
+		mixer.setDaemon(true);
+		mixer.setPriority(Thread.MAX_PRIORITY);
+		mixer.start();
+	}
+// ************************************************************
+	boolean hasOutput() {
+		return line!=null;
+	}
+// ************************************************************
+	// Decodes the given sounds now, so that playing them later does no I/O.
+	void preload(String... names) {
+		for (int i=0; (i<names.length); ++i)
+			samples(names[i]);
+	}
+// ************************************************************
+	// Starts playing res/sounds/<name>.wav, over the top of anything already playing.
+	void play(String name, boolean fLoop) {
+		if (line==null)
+			return;
+		short[] samples=samples(name);
+		if ((samples!=null)&&(samples.length>0)) {
+			fStopLoops=false;
+			requests.add(new Voice(samples, fLoop));
+		}
+	}
+// ************************************************************
+	// Lets every looped sound finish the time round that it is on.
+	void stopLoops() {
+		fStopLoops=true;
+	}
+// ************************************************************
+	synchronized String latencyReport() {
+		if (cStarted==0)
+			return "no sounds played";
+		return String.format("%d sounds, start latency mean %.1f ms, max %.1f ms",
+				cStarted, totalLatency/1e6/cStarted, maxLatency/1e6);
+	}
+// ************************************************************
+	private synchronized void recordLatency(long latency) {
+		++cStarted;
+		totalLatency+=latency;
+		maxLatency=Math.max(maxLatency,latency);
+	}
+// ************************************************************
+	// the decoded samples for this sound, or null if it cannot be read
+	private short[] samples(String name) {
+		synchronized (decoded) {
+			if (decoded.containsKey(name))
+				return decoded.get(name);
+			short[] samples=null;
+			File file=new File(directory,name+".wav");
+			try {
+				samples=decode(file);
+			}
+			catch (Exception e) {
+				System.err.println("Gossip: cannot read sound "+file+": "+e);
+			}
+			decoded.put(name,samples); // a failure is remembered too, so it is only reported once
+			return samples;
+		}
+	}
+// ************************************************************
+	// Reads a whole WAV file and converts it to interleaved 16-bit stereo at sampleRate.
+	private static short[] decode(File file) throws Exception {
+		AudioInputStream source=AudioSystem.getAudioInputStream(file);
+		AudioFormat sourceFormat=source.getFormat();
+		int cChannels=sourceFormat.getChannels();
+		float sourceRate=sourceFormat.getSampleRate();
+		// Java can convert the encoding and sample size for us, but not the rate or channels
+		AudioFormat pcm=new AudioFormat(sourceRate, 16, cChannels, true, false);
+		AudioInputStream stream=AudioSystem.getAudioInputStream(pcm, source);
+		byte[] bytes=readAll(stream);
+		stream.close();
+
+		int cSourceFrames=bytes.length/(2*cChannels);
+		int cFrames=(int)((long)cSourceFrames*sampleRate/sourceRate);
+		short[] samples=new short[2*cFrames];
+		for (int i=0; (i<cFrames); ++i) {
+			// linear interpolation between the two nearest source frames
+			double position=i*(double)sourceRate/sampleRate;
+			int i0=Math.min((int)position,cSourceFrames-1);
+			int i1=Math.min(i0+1,cSourceFrames-1);
+			double fraction=position-i0;
+			for (int channel=0; (channel<2); ++channel) {
+				int c=Math.min(channel,cChannels-1); // mono goes to both sides
+				double s0=sample(bytes,i0*cChannels+c);
+				double s1=sample(bytes,i1*cChannels+c);
+				samples[2*i+channel]=(short)Math.round(s0+(s1-s0)*fraction);
+			}
+		}
+		return samples;
+	}
+// ------------------------------------------------------------
+	private static int sample(byte[] bytes, int i) {
+		return (bytes[2*i]&0xff)|(bytes[2*i+1]<<8);
+	}
+// ------------------------------------------------------------
+	private static byte[] readAll(InputStream stream) throws Exception {
+		ByteArrayOutputStream all=new ByteArrayOutputStream();
+		byte[] buffer=new byte[8192];
+		int cRead;
+		while ((cRead=stream.read(buffer))>0)
+			all.write(buffer,0,cRead);
+		return all.toByteArray();
+	}
+// ************************************************************
+	// The mixer thread. line.write() blocks while the line is full, which paces the loop.
+	public void run() {
+		int[] mix=new int[2*cFramesPerBlock];
+		byte[] block=new byte[4*cFramesPerBlock];
+		while (true) {
+			Voice voice;
+			while ((voice=requests.poll())!=null)
+				voices.add(voice);
+			boolean fStopLoopsNow=fStopLoops;
+
+			for (int i=0; (i<mix.length); ++i)
+				mix[i]=0;
+			for (int v=voices.size()-1; (v>=0); --v) {
+				voice=voices.get(v);
+				if (!voice.fStarted) {
+					voice.fStarted=true;
+					// everything already queued in the line will be heard first
+					long queued=(long)((line.getBufferSize()-line.available())/outputFormat.getFrameSize()/sampleRate*1e9);
+					recordLatency(System.nanoTime()-voice.requested+queued);
+				}
+				int i=0;
+				while (i<mix.length) {
+					int cToCopy=Math.min(mix.length-i,voice.samples.length-voice.iNext);
+					for (int j=0; (j<cToCopy); ++j)
+						mix[i+j]+=voice.samples[voice.iNext+j];
+					i+=cToCopy;
+					voice.iNext+=cToCopy;
+					if (voice.iNext<voice.samples.length)
+						continue;
+					if (voice.fLoop&&!fStopLoopsNow)
+						voice.iNext=0;
+					else
+						break;
+				}
+				if (voice.iNext>=voice.samples.length)
+					voices.remove(v);
+			}
+
+			for (int i=0; (i<mix.length); ++i) {
+				int s=Math.max(Short.MIN_VALUE,Math.min(Short.MAX_VALUE,mix[i]));
+				block[2*i]=(byte)s;
+				block[2*i+1]=(byte)(s>>8);
+			}
+			line.write(block,0,block.length);
+		}
+	}
+// ************************************************************
+}
@@ -0,0 +1,72 @@
+package Gossip;
+
+import java.awt.GraphicsEnvironment;
+import java.awt.image.BufferedImage;
+
+/*
+ * Cold start, and class-data sharing to make it shorter.
+ *
+ * Most of a cold start is the JVM loading, verifying and linking classes: the JDK's
+ * AWT, Java2D, Swing, ImageIO and font classes, and ours. An AppCDS archive holds
+ * all of those already parsed and verified, and the JVM maps it in instead.
+ *
+ *   java -XX:ArchiveClassesAtExit=gossip.jsa -cp gossip.jar Gossip.Gossip train
+ *       is the training run that writes the archive. It builds the game (with a
+ *       window if there is a screen, though the window is never shown), draws every
+ *       display and phase off-screen, plays a short headless tournament and exits.
+ *       Every class those load goes into the archive.
+ *
+ *   java -XX:SharedArchiveFile=gossip.jsa -cp gossip.jar Gossip.Gossip
+ *       then starts the game from the archive. gossip.sh in the top directory does
+ *       all of this: it builds the jar, trains when the jar is newer than the
+ *       archive, and starts the game.
+ *
+ *   java -cp gossip.jar Gossip.Gossip coldStart
+ *       starts the game as far as it would go before the player could click
+ *       (the splash screen drawn and the buttons read), prints "cold start N ms",
+ *       which is the time since the JVM started, and exits. Add
+ *       -Dgossip.timeline=true to see where the time went (see StartupTimeline).
+ *       "GossipBenchmark startup" runs this over and over, with and without the
+ *       archive, for a before and after number.
+ *
+ * The JVM only takes application classes from the archive if the class path is
+ * the same jar, unchanged, that it was trained with. Otherwise it says so and
+ * carries on without the archive.
+ */
+class StartupProfile {
+	static final int cTrainingFrames=20;
+	static final int cTrainingGames=200;
+// ************************************************************
+	static void train() {
+		long start=System.nanoTime();
+		Gossip game=new Gossip(GraphicsEnvironment.isHeadless());
+		game.awaitLoading();
+		RenderBenchmark.newGame(game);
+		BufferedImage image=new BufferedImage(Gossip.frameWidth, Gossip.frameHeight, BufferedImage.TYPE_INT_RGB);
+		for (int iDisplay=0; (iDisplay<Gossip.displayNames.length); ++iDisplay) {
+			for (int iPhase=0; (iPhase<RenderBenchmark.phaseNames.length); ++iPhase) {
+				RenderBenchmark.setUp(game, iDisplay, iPhase);
+				for (int i=0; (i<cTrainingFrames); ++i)
+					game.paint(image.createGraphics());
+			}
+		}
+		GossipTournament.main(new String[] { "games="+cTrainingGames });
+		System.out.println(String.format("training run took %.1f s", (System.nanoTime()-start)/1e9));
+		System.exit(0);	// the archive is written as the JVM exits
+	}
+// ************************************************************
+	static void coldStart() {
+		Gossip game=new Gossip(GraphicsEnvironment.isHeadless());
+		game.iDisplay=Gossip.titleDisplay;
+		game.publishView();
+		BufferedImage image=new BufferedImage(Gossip.frameWidth, Gossip.frameHeight, BufferedImage.TYPE_INT_RGB);
+		game.paint(image.createGraphics());
+		while (!game.fEssentialsLoaded()) {
+			try { Thread.sleep(1); } catch (InterruptedException e) { }
+		}
+		game.timeline.interactive();
+		System.out.println(String.format("cold start %.1f ms", game.timeline.coldStartMillis()));
+		System.exit(0);
+	}
+// ************************************************************
+}
@@ -0,0 +1,86 @@
+package Gossip;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+
+/*
+ * A record of what happened while the game was starting up, and when: the moments
+ * that matter (the first frame on the screen, the game ready for input) and the
+ * time each asset took to load and which thread loaded it. Times are milliseconds
+ * since the Gossip was constructed.
+ *
+ * Recording is cheap and always on; the timeline is only printed, to System.err,
+ * when the game is run with -Dgossip.timeline=true. The time from the JVM starting
+ * to the Gossip being constructed (booting the JVM and loading the first classes)
+ * is worked out only when printing, because java.lang.management is not free to load.
+ * See StartupProfile for measuring a whole cold start.
+ */
+class StartupTimeline {
+	private final long origin=System.nanoTime();
+	private final long originMillis=System.currentTimeMillis();
+	private final ArrayList<String> lines=new ArrayList<String>();
+	private long firstFrame=-1, interactive=-1;
+// ************************************************************
+	static boolean isRequested() {
+		return Boolean.getBoolean("gossip.timeline");
+	}
+// ************************************************************
+	long now() {
+		return System.nanoTime();
+	}
+// ************************************************************
+	private double millis(long time) {
+		return (time-origin)/1e6;
+	}
+// ************************************************************
+	synchronized void event(String what) {
+		lines.add(String.format("%9.1f           %-36s %s", millis(now()), what, Thread.currentThread().getName()));
+	}
+// ************************************************************
+	// something that took from start until now
+	synchronized void span(String what, long start) {
+		long end=now();
+		lines.add(String.format("%9.1f %9.1f %-36s %s", millis(start), (end-start)/1e6, what, Thread.currentThread().getName()));
+	}
+// ************************************************************
+	synchronized void firstFrame() {
+		if (firstFrame<0) {
+			firstFrame=now();
+			event("first frame drawn");
+		}
+	}
+// ************************************************************
+	// The game is ready for the player. Prints the timeline, if it was asked for.
+	synchronized void interactive() {
+		if (interactive>=0)
+			return;
+		interactive=now();
+		event("interactive");
+		if (isRequested())
+			print(System.err);
+	}
+// ************************************************************
+	// How long the JVM had been running when the Gossip was constructed.
+	long jvmBootMillis() {
+		return originMillis-ManagementFactory.getRuntimeMXBean().getStartTime();
+	}
+// ************************************************************
+	// from the JVM starting to the game being ready, or -1 if it is not ready yet
+	synchronized double coldStartMillis() {
+		if (interactive<0)
+			return -1;
+		return jvmBootMillis()+millis(interactive);
+	}
+// ************************************************************
+	synchronized void print(PrintStream out) {
+		out.println("startup timeline (ms)");
+		out.println("JVM start to Gossip construction: "+jvmBootMillis()+" ms");
+		out.println("    start  duration what                                 thread");
+		for (int i=0; (i<lines.size()); ++i)
+			out.println(lines.get(i));
+		out.println(String.format("time to first frame %.1f ms, time to interactive %.1f ms",
+				(firstFrame<0) ? Double.NaN : millis(firstFrame), (interactive<0) ? Double.NaN : millis(interactive)));
+	}
+// ************************************************************
+}
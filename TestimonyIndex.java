@@ -0,0 +1,113 @@
+package Gossip;
+
+import java.util.Arrays;
+
+/*
+ * An index into the history book, keyed by (listener, source, predicate).
+ * For each key it keeps the positions in the history book of every statement
+ * that listener has heard about source's feelings for predicate, in the order
+ * they were made. setSuspiciousness used to find these by scanning the whole
+ * history book; now it looks up the key and walks just the matching entries.
+ *
+ * The keys live in a LongKeyTable, and for each one this remembers the first and last
+ * position and how many there are. The positions in between are chained together
+ * through nextPosition[], which is indexed by history book position, so walking a
+ * key is:
+ *
+ *     for (int i=index.first(iKey); (i>=0); i=index.next(i)) ...
+ *
+ * Neither a lookup nor an addition allocates anything, once reserve() has made
+ * room for the statements to come and the table has seen all of its keys.
+ */
+class TestimonyIndex {
+	private static final int cIndexBits=21;	// enough for any cast we will ever build
+
+	private LongKeyTable keys=new LongKeyTable();	// the packed (listener, source, predicate) keys
+	private int[] firstPosition=new int[64];	// the first history book position filed under each key
+	private int[] lastPosition=new int[64];	// the last history book position filed under each key
+	private int[] cPositions=new int[64];		// how many positions are filed under each key
+
+	private int[] nextPosition=new int[256];	// the next position with the same key, or -1
+	private int cFiled;	// one past the latest position filed
+// ************************************************************
+	private static long key(int tiListener, int tiSource, int tiPredicate) {
+		return ((long)tiListener<<(2*cIndexBits))|((long)tiSource<<cIndexBits)|tiPredicate;
+	}
+// ************************************************************
+	// Returns the number of this key, or -1 if nobody has heard any such thing.
+	int find(int tiListener, int tiSource, int tiPredicate) {
+		return keys.find(key(tiListener,tiSource,tiPredicate));
+	}
+// ************************************************************
+	// how many statements are filed under this key; an empty lookup (-1) has none
+	int size(int iKey) {
+		if (iKey<0)
+			return 0;
+		return cPositions[iKey];
+	}
+// ************************************************************
+	// the history book position of the first statement filed under this key, or -1
+	int first(int iKey) {
+		if (iKey<0)
+			return -1;
+		return firstPosition[iKey];
+	}
+// ************************************************************
+	// the next history book position with the same key, or -1
+	int next(int iHistory) {
+		return nextPosition[iHistory];
+	}
+// ************************************************************
+	// makes sure that positions up to cPositionsNeeded-1 can be filed without allocating
+	void reserve(int cPositionsNeeded) {
+		if (cPositionsNeeded>nextPosition.length)
+			nextPosition=Arrays.copyOf(nextPosition,Math.max(cPositionsNeeded,2*nextPosition.length));
+	}
+// ************************************************************
+	void add(int tiListener, int tiSource, int tiPredicate, int iHistory) {
+		reserve(iHistory+1);
+		int cKeys=keys.size();
+		int iKey=keys.add(key(tiListener,tiSource,tiPredicate));
+		if (iKey==cKeys) {
+			if (iKey==firstPosition.length) {
+				firstPosition=Arrays.copyOf(firstPosition, 2*iKey);
+				lastPosition=Arrays.copyOf(lastPosition, 2*iKey);
+				cPositions=Arrays.copyOf(cPositions, 2*iKey);
+			}
+			firstPosition[iKey]=iHistory;
+			cPositions[iKey]=0;
+		}
+		else
+			nextPosition[lastPosition[iKey]]=iHistory;
+		lastPosition[iKey]=iHistory;
+		nextPosition[iHistory]=-1;
+		++cPositions[iKey];
+		cFiled=Math.max(cFiled, iHistory+1);
+	}
+// ************************************************************
+	// an independent copy, for an engine copied to look ahead with
+	TestimonyIndex copy() {
+		TestimonyIndex copy=new TestimonyIndex();
+		copy.copyFrom(this);
+		return copy;
+	}
+// ------------------------------------------------------------
+	// Makes this the same as from, reusing the arrays this already has where they are
+	// big enough. Only what is in use is copied.
+	void copyFrom(TestimonyIndex from) {
+		keys.copyFrom(from.keys);
+		int cKeys=keys.size();
+		if (firstPosition.length<cKeys) {
+			firstPosition=new int[from.firstPosition.length];
+			lastPosition=new int[from.lastPosition.length];
+			cPositions=new int[from.cPositions.length];
+		}
+		System.arraycopy(from.firstPosition, 0, firstPosition, 0, cKeys);
+		System.arraycopy(from.lastPosition, 0, lastPosition, 0, cKeys);
+		System.arraycopy(from.cPositions, 0, cPositions, 0, cKeys);
+		cFiled=from.cFiled;
+		reserve(cFiled);
+		System.arraycopy(from.nextPosition, 0, nextPosition, 0, cFiled);
+	}
+// ************************************************************
+}
@@ -0,0 +1,49 @@
+#!/bin/sh
+#
+# Starts Gossip from an AppCDS (application class-data sharing) archive, which
+# takes a good part off the cold start; see StartupProfile.java for what it is and
+# how the numbers were measured.
+#
+#   ./gossip.sh [active | tournament ...]   builds if need be, then plays
+#   ./gossip.sh train                       rebuilds the archive now
+#   ./gossip.sh benchmark [runs=N]          cold start with and without the archive
+#
+# Everything it makes goes in build/: the classes, build/gossip.jar and the
+# archive build/gossip.jsa. The jar is rebuilt when any .java file, here or in
+# vector/, is newer than it, and the archive is retrained whenever the jar is newer
+# than the archive, because the JVM will not use an archive made from a different jar.
+#
+# The game is started without the Vector API module, which only pays for itself on
+# casts far bigger than the screen holds and costs time at startup. For big headless
+# simulations, run java --add-modules jdk.incubator.vector -cp build/gossip.jar
+# Gossip.Gossip tournament ... instead; see ArrayKernels.
+#
+# The game reads res/ from the working directory, so this runs from the directory
+# it lives in. Set JAVA to use a particular JDK (17 or later; 13 at the very least).
+
+cd "$(dirname "$0")" || exit 1
+JAVA=${JAVA:-java}
+JAVAC=${JAVAC:-javac}
+JAR=${JAR:-jar}
+
+if [ ! -f build/gossip.jar ] || [ -n "$(find . -maxdepth 1 -name '*.java' -newer build/gossip.jar)$(find vector -name '*.java' -newer build/gossip.jar)" ]; then
+	rm -rf build/classes
+	mkdir -p build/classes
+	"$JAVAC" -encoding ISO-8859-1 -d build/classes *.java || exit 1
+	# the Vector API row sums (see ArrayKernels); the game does without them if this fails
+	"$JAVAC" --add-modules jdk.incubator.vector -cp build/classes -d build/classes vector/VectorKernels.java 2>/dev/null
+	"$JAR" cf build/gossip.jar -C build/classes . || exit 1
+fi
+
+if [ "$1" = "train" ] || [ ! -f build/gossip.jsa ] || [ build/gossip.jar -nt build/gossip.jsa ]; then
+	rm -f build/gossip.jsa
+	"$JAVA" -XX:ArchiveClassesAtExit=build/gossip.jsa -cp build/gossip.jar Gossip.Gossip train || exit 1
+	[ "$1" = "train" ] && exit 0
+fi
+
+if [ "$1" = "benchmark" ]; then
+	shift
+	exec "$JAVA" -cp build/gossip.jar Gossip.GossipBenchmark startup archive=build/gossip.jsa "$@"
+fi
+
+exec "$JAVA" -XX:SharedArchiveFile=build/gossip.jsa -cp build/gossip.jar Gossip.Gossip "$@"
@@ -0,0 +1,83 @@
+package Gossip;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/*
+ * ArrayKernels with the Vector API, which is still an incubator module, so this is
+ * compiled and run with --add-modules jdk.incubator.vector; see ArrayKernels for when
+ * it is used. Each loop runs whole vectors while it can and finishes the last few
+ * doubles one at a time.
+ *
+ * In addQuotients each lane is one element of to, so every element is summed in the
+ * same order as before and the result is exactly the scalar one; the element being
+ * skipped is masked out of its vector rather than added as zero. The sums keep one
+ * partial sum per lane and add them up at the end.
+ */
+class VectorKernels extends ArrayKernels {
+	private static final VectorSpecies<Double> species=DoubleVector.SPECIES_PREFERRED;
+// ************************************************************
+	String describe() {
+		return "Vector API, "+species.length()+" doubles a vector";
+	}
+// ************************************************************
+	void addQuotients(double[] to, double[] from, int iFrom, int n, double divisor, int iSkip) {
+		int k=0;
+		for (int upper=species.loopBound(n); (k<upper); k+=species.length()) {
+			DoubleVector quotients=DoubleVector.fromArray(species, from, iFrom+k).div(divisor);
+			DoubleVector sums=DoubleVector.fromArray(species, to, k);
+			if ((iSkip>=k)&&(iSkip<k+species.length())) {
+				VectorMask<Double> others=VectorMask.fromLong(species, ~(1L<<(iSkip-k)));
+				sums.add(quotients, others).intoArray(to, k);
+			}
+			else
+				sums.add(quotients).intoArray(to, k);
+		}
+		for (; (k<n); ++k) {
+			if (k!=iSkip)
+				to[k]+=from[iFrom+k]/divisor;
+		}
+	}
+// ************************************************************
+	double sum(double[] a, int iA, int n) {
+		DoubleVector sums=DoubleVector.zero(species);
+		int k=0;
+		for (int upper=species.loopBound(n); (k<upper); k+=species.length())
+			sums=sums.add(DoubleVector.fromArray(species, a, iA+k));
+		double sum=sums.reduceLanes(VectorOperators.ADD);
+		for (; (k<n); ++k)
+			sum+=a[iA+k];
+		return sum;
+	}
+// ************************************************************
+	double sumOfSquares(double[] a, int iA, int n) {
+		DoubleVector sums=DoubleVector.zero(species);
+		int k=0;
+		for (int upper=species.loopBound(n); (k<upper); k+=species.length()) {
+			DoubleVector values=DoubleVector.fromArray(species, a, iA+k);
+			sums=values.fma(values, sums);
+		}
+		double sum=sums.reduceLanes(VectorOperators.ADD);
+		for (; (k<n); ++k)
+			sum+=a[iA+k]*a[iA+k];
+		return sum;
+	}
+// ************************************************************
+	double sumOfSquaredDifferences(double[] a, int iA, double[] b, int iB, int n) {
+		DoubleVector sums=DoubleVector.zero(species);
+		int k=0;
+		for (int upper=species.loopBound(n); (k<upper); k+=species.length()) {
+			DoubleVector differences=DoubleVector.fromArray(species, a, iA+k).sub(DoubleVector.fromArray(species, b, iB+k));
+			sums=differences.fma(differences, sums);
+		}
+		double sum=sums.reduceLanes(VectorOperators.ADD);
+		for (; (k<n); ++k) {
+			double difference=a[iA+k]-b[iB+k];
+			sum+=difference*difference;
+		}
+		return sum;
+	}
+// ************************************************************
+}